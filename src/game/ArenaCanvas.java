@@ -0,0 +1,386 @@
+package game;
+
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.SwingUtilities;
+
+/**
+ * The game environment painted actively, used when the system property
+ * game.render is active. Instead of asking Swing to repaint the changed
+ * parts, the own render thread paints the whole newest frame into the back
+ * buffer of the BufferStrategy and shows it. The arena is shown through the
+ * viewport, the same way as in the BallsPanel.
+ *
+ * <p>The frames come at the target frame rate (the system property game.fps,
+ * 60 by default) and they are planned by System.nanoTime() - the thread
+ * is parked until the frame and never waits actively, it is a platform
+ * thread even when the game uses the virtual ones. When a frame takes too
+ * long, the frames which could not be shown in time are skipped, so the
+ * game does not try to catch up. The time between the shown frames is
+ * recorded as the jitter in the metrics, the same way as by the BallsPanel,
+ * so both ways can be compared in the HUD.
+ *
+ * @author Adam
+ */
+class ArenaCanvas extends Canvas implements BPInterface, Runnable {
+
+    private static final long serialVersionUID = 1L; //the canvas is never serialized
+    public static final boolean ACTIVE = "active".equals(System.getProperty("game.render", "passive")); //paint actively?
+    public static final int FPS = Integer.getInteger("game.fps", 60); //target frame rate
+    private static final int BORDER = 5; //width of the border
+    private static final long SLACK = 100000L; //how early can the frame be painted, less than the waking of a parked thread takes, in ns
+    private int refreshInterval = 1000; //how often will new balls be created in ms.
+    private BallHandler handler; //handler, which creates new balls
+    private BallRenderer renderer = new BallRenderer(); //draws the balls
+    private Hud hud = new Hud(); //the HUD with the metrics
+    private Viewport viewport = new Viewport(GameConfig.ARENA, GameConfig.DIMENSION, GameConfig.DIMENSION); //the shown part of the arena
+    private Insets insets = new Insets(BORDER, BORDER, BORDER, BORDER); //the border
+    private Rectangle clip = new Rectangle(); //the painted part of the canvas
+    private BufferStrategy strategy; //the buffers of the canvas
+    private Thread thread; //the render thread
+    private volatile boolean alive = false; //should the render thread continue?
+    private volatile boolean running = false; //is the game running?
+    private volatile boolean requested = false; //should one frame be painted, although the game is paused?
+    private long skipped = 0; //number of skipped frames
+
+    /**
+     * Constructor creates the ball handler and prepares the canvas. It also
+     * becames a mouse listener.
+     *
+     * @author Adam
+     */
+    public ArenaCanvas() {
+        handler = new BallHandler(refreshInterval, GameConfig.ARENA);
+        this.setPreferredSize(new Dimension(GameConfig.DIMENSION, GameConfig.DIMENSION));
+        //the canvas is painted only by the render thread
+        this.setIgnoreRepaint(true);
+        BallsData.getInstance().register(this);
+        this.addMouseListener(this);
+        this.addKeyListener(new HudKey());
+        ViewportControl control = new ViewportControl(viewport, new ViewChange());
+        this.addMouseListener(control);
+        this.addMouseMotionListener(control);
+        this.addMouseWheelListener(control);
+        this.addKeyListener(control);
+        this.setFocusable(true);
+    }
+
+    /**
+     * The canvas got its window, so the buffers are created and the render
+     * thread is started.
+     *
+     * @author Adam
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        createBufferStrategy(2);
+        strategy = getBufferStrategy();
+        alive = true;
+        requested = true;
+        //the render thread waits by parking, a virtual one would only add the latency of its carrier
+        thread = Threads.factory(false, "Render").newThread(this);
+        thread.start();
+    }
+
+    /**
+     * The canvas loses its window, so the render thread is stopped and the
+     * buffers are released.
+     *
+     * @author Adam
+     */
+    @Override
+    public void removeNotify() {
+        alive = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(Simulation.SHUTDOWN_TIMEOUT);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        strategy.dispose();
+        super.removeNotify();
+    }
+
+    /**
+     * The system asks for painting (e.g. the window was uncovered), so one
+     * frame is painted by the render thread.
+     *
+     * @param graphics The graphics environment, it is not used.
+     * @author Adam
+     */
+    @Override
+    public void paint(Graphics graphics) {
+        request();
+    }
+
+    /**
+     * The functions starts or stops the animation.
+     *
+     * @param an Should the animation be started?
+     * @author Adam
+     */
+    @Override
+    public void animate(boolean an) {
+        if (an) {
+            handler.start();
+        } else {
+            handler.stop();
+        }
+        running = an;
+        request();
+    }
+
+    /**
+     * The functions restarts the animation and clears data.
+     *
+     * @author Adam
+     */
+    @Override
+    public void restart() {
+        handler.restart();
+        request();
+    }
+
+    /**
+     * The frames are painted regularly while the game runs, so the changes
+     * are needed only when it is paused (e.g. after the restart).
+     *
+     * @param change All the changes made during the frame.
+     * @author Adam
+     */
+    @Override
+    public void dataChange(FrameChange change) {
+        if (!running) {
+            request();
+        }
+    }
+
+    /**
+     * Asks the render thread to paint one frame.
+     *
+     * @author Adam
+     */
+    private void request() {
+        requested = true;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Returns the number of frames, which were skipped, because the painting
+     * was too late.
+     *
+     * @return The number of skipped frames.
+     * @author Adam
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Main loop of the render thread. It paints a frame, plans the next one
+     * one period later and waits for it. When the thread is more than one
+     * period late, the missed frames are skipped. While the game is paused,
+     * the thread is parked until a frame is requested.
+     *
+     * @author Adam
+     */
+    @Override
+    public void run() {
+        long period = 1000000000L / FPS;
+        long next = System.nanoTime();
+        long last = 0;
+        while (alive) {
+            if (!running && !requested) {
+                LockSupport.park(this);
+                //the paused time is not a jitter
+                next = System.nanoTime();
+                last = 0;
+                continue;
+            }
+            requested = false;
+            render();
+            long now = System.nanoTime();
+            if (last != 0) {
+                Metrics.JITTER.record(Math.abs(now - last - period));
+            }
+            last = running ? now : 0;
+            next += period;
+            if (now - next > period) {
+                long missed = (now - next) / period;
+                skipped += missed;
+                next += missed * period;
+            }
+            waitUntil(next);
+        }
+    }
+
+    /**
+     * Paints the newest frame into the back buffer and shows it. When the
+     * buffers are lost meanwhile, the frame is painted again.
+     *
+     * @author Adam
+     */
+    private void render() {
+        FrameSnapshot frame = BallsData.getInstance().acquireSnapshot();
+        long start = System.nanoTime();
+        int width = getWidth();
+        int height = getHeight();
+        do {
+            do {
+                Graphics2D g2d = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    g2d.setColor(getBackground());
+                    g2d.fillRect(0, 0, width, height);
+                    clip.setBounds(0, 0, width, height);
+                    renderer.paint(g2d, frame, clip, viewport);
+                    //the border is drawn over the balls, as in the BallsPanel
+                    g2d.setColor(Color.BLACK);
+                    g2d.fillRect(0, 0, width, BORDER);
+                    g2d.fillRect(0, height - BORDER, width, BORDER);
+                    g2d.fillRect(0, 0, BORDER, height);
+                    g2d.fillRect(width - BORDER, 0, BORDER, height);
+                    if (hud.isShown()) {
+                        hud.refresh(this, insets, start);
+                        hud.paint(g2d);
+                    }
+                } finally {
+                    g2d.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        //the frame is shown right now, not when the system decides
+        Toolkit.getDefaultToolkit().sync();
+        Metrics.PAINT.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Waits until the given time. The thread is parked, it may wake up
+     * sooner (and it parks again) or a little later. It does not park for
+     * the last moment shorter than the slack, since it would wake up later
+     * than the time anyway.
+     *
+     * @param deadline The time in ns.
+     * @author Adam
+     */
+    private void waitUntil(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        while (remaining > SLACK && alive) {
+            LockSupport.parkNanos(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Main function which represents "hitting" the ball. The click is only
+     * queued, the balls are popped by the simulation. The other buttons move
+     * the viewport.
+     *
+     * @param e object representing the mouse press event
+     * @author Adam
+     */
+    @Override
+    public void mousePressed(MouseEvent e) {
+        //hitting the balls is allowed only when the game is not paused
+        if (running && SwingUtilities.isLeftMouseButton(e)) {
+            BallsData.getInstance().click(Math.round(viewport.toArenaX(e.getX())), Math.round(viewport.toArenaY(e.getY())));
+        }
+        //the canvas takes the focus, so it gets the keys
+        requestFocusInWindow();
+    }
+
+    /**
+     * Only mouse action, which I need to listen to is pressing, so other event
+     * handlers do nothing.
+     *
+     * @author Adam
+     */
+    @Override
+    public void mouseClicked(MouseEvent e) {
+    }
+
+    /**
+     * Only mouse action, which I need to listen to is pressing, so other event
+     * handlers do nothing.
+     *
+     * @author Adam
+     */
+    @Override
+    public void mouseReleased(MouseEvent e) {
+    }
+
+    /**
+     * Only mouse action, which I need to listen to is pressing, so other event
+     * handlers do nothing.
+     *
+     * @author Adam
+     */
+    @Override
+    public void mouseEntered(MouseEvent e) {
+    }
+
+    /**
+     * Only mouse action, which I need to listen to is pressing, so other event
+     * handlers do nothing.
+     *
+     * @author Adam
+     */
+    @Override
+    public void mouseExited(MouseEvent e) {
+    }
+
+    /**
+     * Inner class, which paints a new frame, when the viewport has changed
+     * and the game is paused.
+     *
+     * @author Adam
+     */
+    class ViewChange implements Runnable {
+
+        /**
+         * Asks for a new frame.
+         *
+         * @author Adam
+         */
+        @Override
+        public void run() {
+            request();
+        }
+    }
+
+    /**
+     * Inner class, which switches the HUD on and off by the H key.
+     *
+     * @author Adam
+     */
+    class HudKey extends KeyAdapter {
+
+        /**
+         * Shows or hides the HUD.
+         *
+         * @param e The key event.
+         * @author Adam
+         */
+        @Override
+        public void keyPressed(KeyEvent e) {
+            if (e.getKeyCode() == KeyEvent.VK_H) {
+                hud.toggle();
+                request();
+            }
+        }
+    }
+}
@@ -4,9 +4,25 @@ import java.awt.event.MouseListener;
 
 /**
  * This interface is created simply for the BallsPanel, because it is neccessary
- * for its functions to implement both View and MouseListener interfaces.
+ * for its functions to implement both View and MouseListener interfaces. The
+ * ArenaCanvas implements it too, so the GamePanel can control either of them.
  *
  * @author Adam
  */
 public interface BPInterface extends View, MouseListener {
+
+    /**
+     * The functions starts or stops the animation.
+     *
+     * @param an Should the animation be started?
+     * @author Adam
+     */
+    void animate(boolean an);
+
+    /**
+     * The functions restarts the animation and clears data.
+     *
+     * @author Adam
+     */
+    void restart();
 }
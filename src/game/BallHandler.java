@@ -1,72 +1,219 @@
 package game;
 
 import java.awt.Color;
-import java.awt.Point;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.util.Random;
-import javax.swing.Timer;
 
 /**
  * Balls handler represents the time in our game. It checks every second, if
  * there is enough balls, it sometimes creates a special balls, it cares about
  * starting and pausing of the game and it also counts the time until the end.
+ * All random numbers come from one generator, so the game started with the
+ * same seed creates the same balls.
+ *
+ * <p>In the window, the ticks are run by the GameClock in the simulation
+ * thread, so the game is as long as it should be, even when the EDT is busy.
+ * The extra balls are created by their own deadlines of the clock, spread
+ * across the interval after the tick, so the simulation never gets a burst
+ * of new balls. The headless games call tick() and spawn() by their frames.
+ *
+ * <p>When the games are logged (see GameLog), the handler keeps the record
+ * of the current game and offers it to the log, when the game ends. The
+ * handler of a GameSession is not shared - it has no clock, its games are
+ * not logged and it measures only to the histograms given by measure().
  *
  * @author Adam
  */
 public class BallHandler {
 
+    public static final int SPAWNS = 10; //in how many parts is the interval split for the extra balls
     private final int TIMING = 60000; //how long will one game be
-    private Timer timer; //timer ticking every second
+    private BallsData data; //the balls of the game
+    private GameClock clock; //the game time, which runs the ticks, null when the handler is not shared
     private int size; //the size of the game environment
+    private int minimum; //how many balls there are at least
     private int timeleft = TIMING; //how many time is left before end
-    private int interval; //how often will the timer tick
+    private int interval; //how often does the handler tick in ms
+    private Simulation simulation; //the loop, which moves all the balls
+    private long seed; //the seed of the generator
+    private Random generator; //generator of the new balls
+    private GameRecord record; //the record of the current game, null when the games are not logged
+    private int games = 0; //number of the started games
+    private int pending = 0; //the extra balls, which are not created yet
+    private int spawned = 0; //the spawns since the last tick
+    private int created = 0; //the extra balls created since the last tick
+    private boolean shared; //does the game use the clock, the log and the metrics of the program?
+    private Histogram ticks; //where is the time of the ticks recorded, or null
 
     /**
-     * Constructor, which builds the timer.
+     * Constructor, which prepares the handler. The clock is polled by the
+     * simulation thread, so the headless game, which calls tick() directly
+     * and never starts that thread, does not use it.
      *
-     * @param interval How often will timer tick
+     * @param interval How often does the handler tick in ms
      * @param size How big is the game environment.
      * @author Adam
      */
     public BallHandler(int interval, int size) {
+        this(interval, size, new Random().nextLong());
+    }
+
+    /**
+     * Constructor, which prepares the handler with the given seed of the
+     * random numbers.
+     *
+     * @param interval How often does the handler tick in ms
+     * @param size How big is the game environment.
+     * @param seed The seed of the generator of the balls.
+     * @author Adam
+     */
+    public BallHandler(int interval, int size, long seed) {
+        this(BallsData.getInstance(), interval, size, seed);
+    }
+
+    /**
+     * Constructor, which prepares the shared handler of the given balls.
+     *
+     * @param data The balls of the game.
+     * @param interval How often does the handler tick in ms
+     * @param size How big is the game environment.
+     * @param seed The seed of the generator of the balls.
+     * @author Adam
+     */
+    public BallHandler(BallsData data, int interval, int size, long seed) {
+        this(data, interval, size, seed, true);
+    }
+
+    /**
+     * Constructor, which prepares the handler of the given balls, e.g. of
+     * one GameSession. The handler, which is not shared, has no clock, it
+     * does not log its games and it measures nothing until measure() is
+     * called.
+     *
+     * @param data The balls of the game.
+     * @param interval How often does the handler tick in ms
+     * @param size How big is the game environment.
+     * @param seed The seed of the generator of the balls.
+     * @param shared Does the game use the clock, the log and the metrics of the program?
+     * @author Adam
+     */
+    public BallHandler(BallsData data, int interval, int size, long seed, boolean shared) {
+        this.data = data;
         this.interval = interval;
-        timer = new Timer(interval, new Tick());
+        this.seed = seed;
+        this.shared = shared;
+        generator = new Random(seed);
+        simulation = new Simulation(data, Threads.factory("Simulation"));
+        if (shared) {
+            clock = new GameClock(new Tick(), interval * 1000000L);
+            //the spawns are in the middle of the parts, so they never meet the ticks
+            clock.schedule(new Spawn(), interval * 1000000L / SPAWNS, interval * 1000000L / SPAWNS / 2);
+            simulation.setClock(clock);
+            ticks = Metrics.TICK;
+        } else {
+            measure(null, null, null, null);
+        }
         this.size = size;
+        //ten balls in the environment of the window, more in the bigger arena
+        minimum = (int) Math.max(10, 10L * size * size / ((long) GameConfig.DIMENSION * GameConfig.DIMENSION));
+        startRecord();
     }
 
     /**
-     * Starts the ticking of timer and movement of balls.
+     * Starts the game time and movement of balls.
      *
      * @author Adam
      */
     public void start() {
-        timer.start();
-        for (Ball ball : BallsData.getInstance().getData()) {
-            ball.setRunning(true);
+        if (clock != null) {
+            if (clock.getElapsed(System.nanoTime()) == 0) {
+                //the simulation has run since the game was cleared, the seconds start now
+                data.startSeconds();
+            }
+            clock.start();
         }
+        simulation.start();
     }
 
     /**
-     * Stops the ticking of timer and movement of balls.
+     * Stops the game time and movement of balls.
      *
      * @author Adam
      */
     public void stop() {
-        timer.stop();
-        for (Ball ball : BallsData.getInstance().getData()) {
-            ball.setRunning(false);
+        if (clock != null) {
+            clock.pause();
+        }
+        simulation.pause();
+    }
+
+    /**
+     * Records the time of the steps, of the finishing of the frames, of the
+     * ticks and of the clicks to the given histograms instead of the shared
+     * metrics, e.g. of one shard of the sessions.
+     *
+     * @param steps The histogram of the steps, or null when not measured.
+     * @param fires The histogram of the finishing of the frames, or null.
+     * @param ticks The histogram of the ticks, or null.
+     * @param clicks The histogram of the clicks, or null.
+     * @author Adam
+     */
+    public void measure(Histogram steps, Histogram fires, Histogram ticks, Histogram clicks) {
+        simulation.measure(steps, fires);
+        data.measure(clicks);
+        this.ticks = ticks;
+    }
+
+    /**
+     * Returns the clock of the game time.
+     *
+     * @return The clock, null when the handler is not shared.
+     * @author Adam
+     */
+    public GameClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Returns the seed of the generator of the balls.
+     *
+     * @return The seed.
+     * @author Adam
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the simulation, which moves the balls.
+     *
+     * @return The simulation.
+     * @author Adam
+     */
+    public Simulation getSimulation() {
+        return simulation;
+    }
+
+    /**
+     * Starts the record of the new game, when the games are logged. The
+     * record of the unfinished game is forgotten.
+     *
+     * @author Adam
+     */
+    private void startRecord() {
+        if (shared && GameLog.getShared() != null) {
+            record = new GameRecord(seed, games++, simulation.getFrame());
+            data.setRecord(record);
         }
     }
 
     /**
      * Checks, if there is at least ten balls and if not, creates them to make
-     * them 10.
+     * them 10. The bigger arena has as many balls on the same area.
      *
      * @author Adam
      */
     private void checkBalls() {
-        while (BallsData.getInstance().getData().size() < 10) {
+        while (data.getData().size() < minimum) {
             createBall();
         }
     }
@@ -76,27 +223,21 @@ public class BallHandler {
      *
      * @author Adam
      */
-    private void createBall() {
-        Random generator = new Random();
-        //generates the ball with random attributes
-        Ball ball = new Ball(getColor(generator.nextInt(6)), new Point(generator.nextInt(BallsPanel.DIMENSION), generator.nextInt(BallsPanel.DIMENSION)), generator.nextInt(4) + 1, generator.nextInt(4) + 1);
-        ball.setBounds(size, size);
-        //inserts the ball to the collection
-        BallsData.getInstance().addBall(ball);
-        Thread thread = new Thread(ball);
-        //starts the movement of the ball
-        thread.start();
-        BallsData.getInstance().addThread(thread);
+    void createBall() {
+        //generates the ball with random attributes and inserts it to the
+        //store, the simulation will move it
+        data.addBall(generator.nextInt(size), generator.nextInt(size), generator.nextInt(4) + 1, generator.nextInt(4) + 1, generator.nextInt(6));
     }
 
     /**
-     * This function is used to generate colors from the given ones.
+     * This function is used to generate colors from the given ones. The balls
+     * keep only the number, this function gives its color.
      *
      * @param num The color is generated from the number.
      * @returns A color.
      * @author Adam
      */
-    private Color getColor(int num) {
+    static Color getColor(int num) {
         switch (num) {
             case 0:
                 return Color.BLACK;
@@ -116,71 +257,167 @@ public class BallHandler {
     }
 
     /**
-     * Function, which updates the label with time remaining.
+     * Function, which informs the listeners about the time remaining.
      *
      * @author Adam
      */
     private void updateTime() {
-        GamePanel.getInstance().getTimeleft().setText(timeleft / 1000 + " seconds");
+        data.fireTime(timeleft);
     }
 
     /**
-     * Restarts the time and the timer.
+     * Restarts the game time. The simulation thread is stopped
+     * (and it is checked, that it has really ended), the data of the game
+     * are cleared and then the simulation continues with a new thread, when
+     * it was running.
      *
      * @author Adam
      */
     public void restart() {
+        boolean running = simulation.isRunning();
+        if (!simulation.shutdown(Simulation.SHUTDOWN_TIMEOUT)) {
+            System.out.println("Simulation did not stop in " + Simulation.SHUTDOWN_TIMEOUT + " ms!");
+        }
+        if (clock != null) {
+            clock.pause();
+        }
+        data.clear();
+        startRecord();
         timeleft = TIMING;
-        timer.restart();
+        pending = 0;
+        created = 0;
+        if (clock != null) {
+            clock.reset();
+        }
         updateTime();
+        if (running) {
+            start();
+        }
     }
 
     /**
-     * Ends the timer and shows the information of the ended game.
+     * Stops the game time and shows the information of the ended game. The
+     * metrics of the shared game are written to the file, when it is set,
+     * and the game is offered to the log.
      *
      * @author Adam
      */
     private void endGame() {
         timeleft = TIMING;
-        timer.stop();
+        pending = 0;
+        created = 0;
+        if (clock != null) {
+            clock.pause();
+            clock.reset();
+        }
         updateTime();
 
-        GamePanel.getInstance().getInfo().setText("You hit " + BallsData.getInstance().getScore() + " balls!");
+        data.fireEnd();
+        if (shared) {
+            Metrics.dump(data.getScore());
+        }
+        if (record != null) {
+            //the log is written by its own thread, the game does not wait
+            record.finish(simulation.getFrame(), data.getScore());
+            GameLog.getShared().offer(record);
+            startRecord();
+        }
 
         //also clears the data of the previous game
-        BallsData.getInstance().clear();
+        data.clear();
+    }
+
+    /**
+     * One tick of the game time. It checks, if there is enough balls and it
+     * sometimes orders the extra balls (once in 10 secs), which are created
+     * by the spawns of the next interval. It also cares about the time left
+     * info, and it ends the game after one minute. It is called by the
+     * clock, or directly, when the game runs without a window. The time left
+     * goes down by the interval, the clock runs the ticks exactly at the
+     * whole intervals of the game time.
+     *
+     * @author Adam
+     */
+    public void tick() {
+        long start = System.nanoTime();
+        checkBalls();
+        int random = generator.nextInt(100);
+        if (random < 10) {
+            pending += minimum / 10;
+        }
+        spawned = 0;
+        created = 0;
+
+        timeleft -= interval;
+        if (record != null) {
+            record.addTick(data.getData().size(), data.getScore());
+        }
+
+        updateTime();
+        if (ticks != null) {
+            ticks.record(System.nanoTime() - start);
+        }
+        if (timeleft <= 0) {
+            endGame();
+        }
+    }
+
+    /**
+     * One spawn of the extra balls. The balls ordered by the last tick are
+     * split evenly to all the spawns of the interval - every spawn creates
+     * the balls, which are missing to its part of the order - so the last
+     * one creates the rest. It is called by the clock SPAWNS times per
+     * interval, or directly, when the game runs without a window.
+     *
+     * @author Adam
+     */
+    public void spawn() {
+        int ordered = pending + created;
+        int count = ordered * Math.min(spawned + 1, SPAWNS) / SPAWNS - created;
+        for (int k = 0; k < count; k++) {
+            createBall();
+        }
+        pending -= count;
+        created += count;
+        spawned++;
     }
 
     /**
-     * Inner class representing one Tick of the timer.
+     * Inner class representing one Spawn of the clock.
      *
      * @author Adam
      */
-    class Tick implements ActionListener {
+    class Spawn implements Runnable {
 
         /**
-         * This function is started once every second. It checks, if there is
-         * enough balls and it sometimes generates an extra ball (once in 10
-         * secs). It also cares about the time left info, and it ends the game
-         * after one minute.
+         * This function is started SPAWNS times in every interval of the
+         * game time by the simulation thread, it creates a part of the extra
+         * balls.
          *
          * @author Adam
          */
         @Override
-        public void actionPerformed(ActionEvent e) {
-            checkBalls();
-            Random generator = new Random();
-            int random = generator.nextInt(100);
-            if (random < 10) {
-                createBall();
-            }
+        public void run() {
+            spawn();
+        }
+    }
 
-            timeleft -= interval;
+    /**
+     * Inner class representing one Tick of the clock.
+     *
+     * @author Adam
+     */
+    class Tick implements Runnable {
 
-            updateTime();
-            if (timeleft <= 0) {
-                endGame();
-            }
+        /**
+         * This function is started once every second of the game time by
+         * the simulation thread, it performs one tick of the game time.
+         *
+         * @author Adam
+         */
+        @Override
+        public void run() {
+            tick();
         }
     }
 }
@@ -0,0 +1,180 @@
+package game;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.geom.Ellipse2D;
+import java.util.Arrays;
+
+/**
+ * Draws the balls from the snapshot into a graphics environment. The balls are
+ * drawn either as shapes (every ball sets its color and fills its oval), or
+ * from the pre-rendered sprites. In the second case, the visible balls are
+ * first sorted by their colors, so the same image is copied many times in a
+ * row. The way of drawing is chosen by the system property game.sprites, so
+ * both of them can be compared. The balls are drawn through the viewport, so
+ * only the balls in the shown part of the arena are looked at. When the
+ * arena is zoomed out so much, that the balls would be only a few pixels
+ * big, the balls are not drawn at all - every few cells of the grid are
+ * drawn as one tile, which is the darker, the more balls there are (level
+ * of detail). Then the painting depends only on the number of shown cells,
+ * not on the number of balls.
+ *
+ * @author Adam
+ */
+class BallRenderer {
+
+    public static final boolean SPRITES = Boolean.parseBoolean(System.getProperty("game.sprites", "true")); //draw the balls from sprites?
+    private Ellipse2D oval = new Ellipse2D.Double(); //shape used to draw the balls
+    private BallSprites sprites = new BallSprites(); //the pre-rendered balls
+    private int[][] batches = new int[BallSprites.COLORS][64]; //snapshot indexes of visible balls by color
+    private int[] batchSizes = new int[BallSprites.COLORS]; //how many balls are in each batch
+    public static final double LOD_SCALE = 0.25; //below this zoom the density tiles are drawn
+    private static final int TILE = 4; //the smallest size of a density tile in pixels
+    private static final int LEVELS = 16; //number of shades of the density tiles
+    private Color[] shades = new Color[LEVELS]; //the shades of the density tiles
+
+    /**
+     * Constructor prepares the shades of the density tiles.
+     *
+     * @author Adam
+     */
+    public BallRenderer() {
+        for (int k = 0; k < LEVELS; k++) {
+            //opaque colors are copied much faster than the translucent ones
+            int light = 224 - 224 * k / (LEVELS - 1);
+            shades[k] = new Color(light, light, 128 + light / 2);
+        }
+    }
+
+    /**
+     * Draws all balls of the snapshot, which touch the clip. Only the balls
+     * from the cells near the clip are checked. No lock is needed, the
+     * snapshot does not change.
+     *
+     * @param graphics The graphics environment.
+     * @param frame The snapshot of the frame.
+     * @param clip The part of the environment, which is painted.
+     * @param view The shown part of the arena.
+     * @author Adam
+     */
+    public void paint(Graphics2D graphics, FrameSnapshot frame, Rectangle clip, Viewport view) {
+        double scale = view.getScale();
+        //the part of the arena in the clip
+        float left = (float) (view.getX() + clip.x / scale);
+        float top = (float) (view.getY() + clip.y / scale);
+        float right = (float) (view.getX() + (clip.x + clip.width) / scale);
+        float bottom = (float) (view.getY() + (clip.y + clip.height) / scale);
+        if (scale < LOD_SCALE) {
+            paintDensity(graphics, frame, left, top, right, bottom, view);
+            return;
+        }
+        if (SPRITES) {
+            sprites.validate(graphics, scale);
+        }
+        int lastRow = frame.row(bottom + Ball.R);
+        int lastColumn = frame.column(right + Ball.R);
+        for (int r = frame.row(top - Ball.R); r <= lastRow; r++) {
+            for (int c = frame.column(left - Ball.R); c <= lastColumn; c++) {
+                for (int k = frame.cellStart(c, r); k < frame.cellEnd(c, r); k++) {
+                    float x = frame.getX(k);
+                    float y = frame.getY(k);
+                    if (x < right && x + Ball.R + 1 > left && y < bottom && y + Ball.R + 1 > top) {
+                        if (SPRITES) {
+                            addToBatch(frame.getColor(k), k);
+                        } else {
+                            graphics.setColor(BallHandler.getColor(frame.getColor(k)));
+                            Ball.draw(graphics, oval, (x - view.getX()) * scale, (y - view.getY()) * scale, Ball.R * scale);
+                        }
+                    }
+                }
+            }
+        }
+        if (SPRITES) {
+            paintBatches(graphics, frame, view);
+        }
+    }
+
+    /**
+     * Draws the density tiles instead of the balls. Every tile covers a few
+     * cells of the grid, so it is at least a few pixels big, and its shade
+     * depends on the number of balls in its cells.
+     *
+     * @param graphics The graphics environment.
+     * @param frame The snapshot of the frame.
+     * @param left The left side of the painted part of the arena.
+     * @param top The top side of the painted part of the arena.
+     * @param right The right side of the painted part of the arena.
+     * @param bottom The bottom side of the painted part of the arena.
+     * @param view The shown part of the arena.
+     * @author Adam
+     */
+    private void paintDensity(Graphics2D graphics, FrameSnapshot frame, float left, float top, float right, float bottom, Viewport view) {
+        double scale = view.getScale();
+        int cells = Math.max(1, (int) Math.ceil(TILE / (SpatialGrid.CELL * scale)));
+        int size = (int) Math.ceil(cells * SpatialGrid.CELL * scale);
+        //more than one ball fits to a cell only when they overlap
+        int full = cells * cells;
+        int lastRow = frame.row(bottom);
+        int lastColumn = frame.column(right);
+        for (int r0 = frame.row(top) / cells * cells; r0 <= lastRow; r0 += cells) {
+            for (int c0 = frame.column(left) / cells * cells; c0 <= lastColumn; c0 += cells) {
+                int count = 0;
+                for (int r = r0; r < Math.min(r0 + cells, frame.getRows()); r++) {
+                    for (int c = c0; c < Math.min(c0 + cells, frame.getColumns()); c++) {
+                        count += frame.cellEnd(c, r) - frame.cellStart(c, r);
+                    }
+                }
+                if (count > 0) {
+                    graphics.setColor(shades[Math.min(LEVELS - 1, (count - 1) * LEVELS / full)]);
+                    int x = (int) ((c0 * SpatialGrid.CELL - view.getX()) * scale);
+                    int y = (int) ((r0 * SpatialGrid.CELL - view.getY()) * scale);
+                    graphics.fillRect(x, y, size, size);
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts the visible ball to the batch of its color.
+     *
+     * @param color The color number of the ball.
+     * @param i The index of the ball in the snapshot.
+     * @author Adam
+     */
+    private void addToBatch(int color, int i) {
+        int[] batch = batches[color];
+        if (batchSizes[color] == batch.length) {
+            batch = Arrays.copyOf(batch, batch.length * 2);
+            batches[color] = batch;
+        }
+        batch[batchSizes[color]++] = i;
+    }
+
+    /**
+     * Copies the sprites of all batched balls, one color after another, and
+     * empties the batches.
+     *
+     * @param graphics The graphics environment.
+     * @param frame The snapshot of the frame.
+     * @param view The shown part of the arena.
+     * @author Adam
+     */
+    private void paintBatches(Graphics2D graphics, FrameSnapshot frame, Viewport view) {
+        double scale = view.getScale();
+        double x = view.getX();
+        double y = view.getY();
+        for (int color = 0; color < BallSprites.COLORS; color++) {
+            int[] batch = batches[color];
+            Image sprite = sprites.get(color);
+            for (int k = 0; k < batchSizes[color]; k++) {
+                int i = batch[k];
+                int sx = (int) ((frame.getX(i) - x) * scale);
+                int sy = (int) ((frame.getY(i) - y) * scale);
+                graphics.drawImage(sprite, sx, sy, null);
+            }
+            batchSizes[color] = 0;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package game;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.VolatileImage;
+
+/**
+ * Cache of pre-rendered balls. All balls have the same size and there are
+ * only a few colors, so every color is rendered once (anti-aliased) into an
+ * image and the balls are then drawn by copying the image. The images are
+ * VolatileImages, so they can stay in the video memory and the copying is
+ * accelerated. Their content can be lost at any time, so it is checked before
+ * every frame and rendered again when needed. When the view is zoomed, the
+ * images are rendered again in the zoomed size, so they are still only
+ * copied and never stretched.
+ *
+ * @author Adam
+ */
+class BallSprites {
+
+    public static final int COLORS = 7; //number of colors from BallHandler.getColor
+    private static final int SIZE = Ball.R + 1; //size of the image without zoom (with the edge)
+    private int size = SIZE; //current size of the images
+    private GraphicsConfiguration config; //configuration the images were made for
+    private Image[] sprites = new Image[COLORS]; //the image for every color
+
+    /**
+     * Makes sure, that the images are ready for drawing to the given graphics
+     * environment in the given zoom. It has to be called before every frame.
+     *
+     * @param graphics The graphics environment the balls will be drawn to.
+     * @param scale The zoom of the view.
+     * @author Adam
+     */
+    public void validate(Graphics2D graphics, double scale) {
+        GraphicsConfiguration gc = graphics.getDeviceConfiguration();
+        int wanted = Math.max(1, (int) Math.ceil(SIZE * scale));
+        if (gc != config || wanted != size) {
+            config = gc;
+            size = wanted;
+            for (int c = 0; c < COLORS; c++) {
+                sprites[c] = create(c);
+            }
+            return;
+        }
+        for (int c = 0; c < COLORS; c++) {
+            if (sprites[c] instanceof VolatileImage) {
+                VolatileImage image = (VolatileImage) sprites[c];
+                int state = image.validate(config);
+                if (state == VolatileImage.IMAGE_INCOMPATIBLE) {
+                    sprites[c] = create(c);
+                } else if (state == VolatileImage.IMAGE_RESTORED || image.contentsLost()) {
+                    render(image, c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the image of the ball of the given color.
+     *
+     * @param color The color number.
+     * @return The image.
+     * @author Adam
+     */
+    public Image get(int color) {
+        return sprites[color];
+    }
+
+    /**
+     * Returns the size of the images in the current zoom.
+     *
+     * @return The size in pixels.
+     * @author Adam
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Creates the image for one color. When the volatile image can not be
+     * created, the ordinary one is used.
+     *
+     * @param color The color number.
+     * @return The new image.
+     * @author Adam
+     */
+    private Image create(int color) {
+        Image image;
+        try {
+            image = config.createCompatibleVolatileImage(size, size, Transparency.TRANSLUCENT);
+        } catch (RuntimeException ex) {
+            image = null;
+        }
+        if (image == null) {
+            image = config.createCompatibleImage(size, size, Transparency.TRANSLUCENT);
+        }
+        render(image, color);
+        return image;
+    }
+
+    /**
+     * Renders the anti-aliased ball into the image.
+     *
+     * @param image The image of the ball.
+     * @param color The color number.
+     * @author Adam
+     */
+    private void render(Image image, int color) {
+        Graphics2D g = (Graphics2D) image.getGraphics();
+        //clears the image to be fully transparent
+        g.setComposite(AlphaComposite.Src);
+        g.setColor(new Color(0, 0, 0, 0));
+        g.fillRect(0, 0, size, size);
+        g.setComposite(AlphaComposite.SrcOver);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(BallHandler.getColor(color));
+        g.fillOval(0, 0, size - 1, size - 1);
+        g.dispose();
+    }
+}
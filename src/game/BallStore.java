@@ -0,0 +1,215 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * Primitive storage of all balls in the game. Instead of one object per ball,
+ * every attribute is kept in its own array (structure of arrays), so one ball
+ * costs only a few dozen bytes and the loops over all balls walk contiguous
+ * memory. The balls are kept densely packed at indexes 0 to size-1, a removed
+ * ball is replaced by the last one (swap-remove). Because the indexes change,
+ * every ball also has a stable id, which can be translated back to the index.
+ * The arrays are accessed directly by the code, which steps the balls, so
+ * they have to be read again after a ball is added (they may grow). The store
+ * also keeps the spatial grid of the balls up to date, so the balls near some
+ * point can be found without looking at all of them.
+ *
+ * @author Adam
+ */
+class BallStore {
+
+    private static final int INITIAL_CAPACITY = 64; //capacity of empty store
+    float[] x; //x coordinates of the balls
+    float[] y; //y coordinates of the balls
+    float[] vx; //speeds of the balls in x way
+    float[] vy; //speeds of the balls in y way
+    byte[] color; //color numbers of the balls (see BallHandler.getColor)
+    int[] id; //stable ids of the balls
+    private int[] index; //indexes of the balls by their ids, -1 when not alive
+    private int[] freeIds; //ids of popped balls, which can be used again
+    private int freeCount = 0; //how many ids are free
+    private int nextId = 0; //the lowest id, which has never been used
+    private int size = 0; //how many balls are alive
+    private int rightBound; //right bound for the left side of the balls
+    private int bottomBound; //bottom bound for the top side of the balls
+    private SpatialGrid grid; //index of the balls by their position
+
+    /**
+     * Constructor allocates the arrays and sets the bounds of the game
+     * environment.
+     *
+     * @param width The width of the game environment.
+     * @param height The height of the game environment.
+     * @author Adam
+     */
+    public BallStore(int width, int height) {
+        x = new float[INITIAL_CAPACITY];
+        y = new float[INITIAL_CAPACITY];
+        vx = new float[INITIAL_CAPACITY];
+        vy = new float[INITIAL_CAPACITY];
+        color = new byte[INITIAL_CAPACITY];
+        id = new int[INITIAL_CAPACITY];
+        index = new int[INITIAL_CAPACITY];
+        freeIds = new int[INITIAL_CAPACITY];
+        Arrays.fill(index, -1);
+        rightBound = width - Ball.R;
+        bottomBound = height - Ball.R;
+        grid = new SpatialGrid(width, height, INITIAL_CAPACITY);
+    }
+
+    /**
+     * Returns the number of the alive balls.
+     *
+     * @return The number of balls.
+     * @author Adam
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the right bound for the x coordinate of the balls.
+     *
+     * @return The maximal x coordinate.
+     * @author Adam
+     */
+    public int getRightBound() {
+        return rightBound;
+    }
+
+    /**
+     * Returns the bottom bound for the y coordinate of the balls.
+     *
+     * @return The maximal y coordinate.
+     * @author Adam
+     */
+    public int getBottomBound() {
+        return bottomBound;
+    }
+
+    /**
+     * Returns the spatial grid with the balls.
+     *
+     * @return The grid.
+     * @author Adam
+     */
+    public SpatialGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Adds a new ball at the end of the arrays.
+     *
+     * @param x The start x coordinate of the ball.
+     * @param y The start y coordinate of the ball.
+     * @param vx Initial x velocity.
+     * @param vy Initial y velocity.
+     * @param color The color number of the ball.
+     * @return The index of the new ball.
+     * @author Adam
+     */
+    public int add(float x, float y, float vx, float vy, int color) {
+        if (size == this.x.length) {
+            grow();
+        }
+        int newId = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+        int i = size++;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.vx[i] = vx;
+        this.vy[i] = vy;
+        this.color[i] = (byte) color;
+        this.id[i] = newId;
+        index[newId] = i;
+        grid.update(newId, x, y);
+        return i;
+    }
+
+    /**
+     * Has to be called, when the ball changes its position, so it is moved
+     * to the right cell of the grid.
+     *
+     * @param i The index of the moved ball.
+     * @author Adam
+     */
+    public void moved(int i) {
+        grid.update(id[i], x[i], y[i]);
+    }
+
+    /**
+     * Removes the ball at the given index. The last ball is moved to its
+     * place, so the arrays stay densely packed.
+     *
+     * @param i The index of the removed ball.
+     * @author Adam
+     */
+    public void remove(int i) {
+        int last = --size;
+        grid.remove(id[i]);
+        index[id[i]] = -1;
+        freeIds[freeCount++] = id[i];
+        if (i != last) {
+            x[i] = x[last];
+            y[i] = y[last];
+            vx[i] = vx[last];
+            vy[i] = vy[last];
+            color[i] = color[last];
+            id[i] = id[last];
+            index[id[i]] = i;
+        }
+    }
+
+    /**
+     * Tells, if the ball with the given id is still alive.
+     *
+     * @param ballId The id of the ball.
+     * @return True, if the ball was not removed yet.
+     * @author Adam
+     */
+    public boolean isAlive(int ballId) {
+        return ballId < nextId && index[ballId] >= 0;
+    }
+
+    /**
+     * Translates the id of the ball to its current index.
+     *
+     * @param ballId The id of the ball.
+     * @return The index of the ball, or -1 when it is not alive.
+     * @author Adam
+     */
+    public int indexOf(int ballId) {
+        return ballId < nextId ? index[ballId] : -1;
+    }
+
+    /**
+     * Removes all balls. The arrays are kept, so they can be filled again.
+     *
+     * @author Adam
+     */
+    public void clear() {
+        Arrays.fill(index, 0, nextId, -1);
+        grid.clear();
+        size = 0;
+        freeCount = 0;
+        nextId = 0;
+    }
+
+    /**
+     * Doubles the capacity of all arrays.
+     *
+     * @author Adam
+     */
+    private void grow() {
+        int capacity = x.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        color = Arrays.copyOf(color, capacity);
+        id = Arrays.copyOf(id, capacity);
+        freeIds = Arrays.copyOf(freeIds, capacity);
+        int oldCapacity = index.length;
+        index = Arrays.copyOf(index, capacity);
+        Arrays.fill(index, oldCapacity, capacity, -1);
+    }
+}
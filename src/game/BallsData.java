@@ -1,104 +1,301 @@
 package game;
 
+import java.util.Arrays;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * Singleton class, which saves the information about all balls and threads
- * together. It is possible to register as a view to this data and show them in
- * programs. Actually, here is only one view registered, but e.g. for debugging
- * purposes, there could be e.g. a table representation of the balls.
+ * The class, which saves the information about all balls of one game
+ * together. The window and the server use the shared instance from
+ * getInstance(), the GameSessions have their own ones, so many games can be
+ * played in one program at once without seeing each other.
+ *
+ * <p>The balls are kept in the BallStore, which is also the monitor guarding
+ * them - everybody, who reads or changes the balls, has to synchronize on
+ * it. The clicks wait in the lock-free ClickQueue until the simulation
+ * resolves them at the beginning of its next step, so the thread, which
+ * clicked, never waits for the monitor.
+ *
+ * <p>The changes of the balls are only marked and the views get all of them
+ * at once, when the simulation finishes the frame. Every view gets them from
+ * its own ViewDispatcher, so the simulation never waits for any view, and
+ * the frame is copied to the SnapshotBuffer, so the balls can be painted
+ * without the monitor.
+ *
+ * <p>The hits are counted by the Scoreboard. The score (once per frame, when
+ * it changed) and the time are sent to the GameListeners, so the game needs
+ * no window and can also run headless.
  *
  * @author Adam
  */
 class BallsData {
 
-    private static BallsData instance; //the instance of the singleton class
-    private CopyOnWriteArrayList<Ball> balls; //collection of the balls
-    private CopyOnWriteArrayList<View> views; //collection of the views
-    private CopyOnWriteArrayList<Thread> threads; //collection of the thrads
-    private int score;
+    private static final int CLICKS = 256; //how many clicks can wait for the simulation
+    private static BallsData instance; //the shared instance
+    private int size; //the size of the arena
+    private BallStore balls; //storage of the balls
+    private CopyOnWriteArrayList<ViewDispatcher> views; //the dispatchers of the views
+    private CopyOnWriteArrayList<GameListener> listeners; //listeners of score and time
+    private FrameChange pending; //changes collected during the current frame
+    private FrameChange delivered; //changes being sent to the views
+    private SnapshotBuffer snapshots; //copies of the finished frames for painting
+    private int[] marked = new int[64]; //the generation, in which each ball id was marked
+    private int generation = 1; //generation of the current frame
+    private long frame = 0; //number of the last finished frame
+    private ClickQueue clicks = new ClickQueue(CLICKS); //clicks waiting for the simulation
+    private volatile GameRecord record; //the record of the current game, or null
+    private volatile PopSound sound; //the sound of the popped balls, or null
+    private Histogram resolved = Metrics.CLICK; //where is the time from the click to the popped balls recorded, or null
+    private Scoreboard scoreboard = new Scoreboard(); //the score of the current game
+    private int firedScore = 0; //the score, which the listeners know
 
     /**
-     * Private constructor which allocates the collections. It is private,
-     * because the class is the singleton.
+     * Constructor which allocates the collections for the arena of the given
+     * size. The shared instance is made by getInstance(), the sessions make
+     * their own ones.
      *
+     * @param size The size of the arena.
      * @author Adam
      */
-    private BallsData() {
-        balls = new CopyOnWriteArrayList<>();
+    BallsData(int size) {
+        this.size = size;
+        balls = new BallStore(size, size);
         views = new CopyOnWriteArrayList<>();
-        threads = new CopyOnWriteArrayList<>();
+        listeners = new CopyOnWriteArrayList<>();
+        pending = new FrameChange(size, size);
+        delivered = new FrameChange(size, size);
+        snapshots = new SnapshotBuffer(size, size);
     }
 
     /**
-     * Static method, which is used to get the instance of the BallsData. If the
-     * instance does not exist yet, this will create it.
+     * Static method, which is used to get the shared instance of the
+     * BallsData. If the instance does not exist yet, this will create it. Any
+     * thread can call it.
      *
-     * @return The instance of the singleton.
+     * @return The shared instance.
      * @author Adam
      */
-    public static BallsData getInstance() {
+    public static synchronized BallsData getInstance() {
         if (instance == null) {
-            instance = new BallsData();
+            instance = new BallsData(GameConfig.ARENA);
         }
         return instance;
     }
 
     /**
-     * Returns the collection with balls data.
+     * Returns the store with balls data.
      *
-     * @return The collection of balls.
+     * @return The store of balls.
      * @author Adam
      */
-    public CopyOnWriteArrayList<Ball> getData() {
+    public BallStore getData() {
         return balls;
     }
 
     /**
-     * Returns the collection with threads.
+     * Adds the new ball to the store.
      *
-     * @return The collection of threads.
+     * @param x The start x coordinate of the ball.
+     * @param y The start y coordinate of the ball.
+     * @param vx Initial x velocity.
+     * @param vy Initial y velocity.
+     * @param color The color number of the ball.
      * @author Adam
      */
-    public CopyOnWriteArrayList<Thread> getThreads() {
-        return threads;
+    public void addBall(float x, float y, float vx, float vy, int color) {
+        synchronized (balls) {
+            int i = balls.add(x, y, vx, vy, color);
+            //inform others of data change
+            markChanged(balls.id[i]);
+            pending.getDirty().addBall(x, y);
+        }
     }
 
     /**
-     * Adds the new ball to the collection.
+     * Remove the ball from the store. The caller has to hold the monitor of
+     * the store, because the index is valid only until the balls change.
      *
-     * @param ball The newly created ball.
+     * @param i The index of the ball, which was hit.
      * @author Adam
      */
-    public void addBall(Ball ball) {
-        balls.add(ball);
+    public void removeBall(int i) {
         //inform others of data change
-        fire();
+        markChanged(balls.id[i]);
+        pending.getDirty().addBall(balls.x[i], balls.y[i]);
+        //the ball is popped in the frame after the last finished one
+        scoreboard.hit(balls.color[i], frame + 1);
+        balls.remove(i);
     }
 
     /**
-     * Remove the ball from the collection.
+     * Marks the ball as changed in the current frame. Every ball is sent to
+     * the views only once, even when it changes more times. The caller has to
+     * hold the monitor of the store.
      *
-     * @param ball The ball, which was hit.
+     * @param ballId The id of the changed ball.
      * @author Adam
      */
-    public void removeBall(Ball ball) {
-        balls.remove(ball);
-        //increase score and update the score label
-        score++;
-        GamePanel.getInstance().getScore().setText(score + " balls hit");
-        //inform others of data change
-        fire();
+    public void markChanged(int ballId) {
+        if (ballId >= marked.length) {
+            marked = Arrays.copyOf(marked, Math.max(ballId + 1, marked.length * 2));
+        }
+        if (marked[ballId] != generation) {
+            marked[ballId] = generation;
+            pending.add(ballId);
+        }
+    }
+
+    /**
+     * Marks the ball as changed, after it has moved from the old position.
+     * The caller has to hold the monitor of the store.
+     *
+     * @param i The index of the moved ball.
+     * @param oldX The x coordinate before the move.
+     * @param oldY The y coordinate before the move.
+     * @author Adam
+     */
+    public void markMoved(int i, float oldX, float oldY) {
+        markChanged(balls.id[i]);
+        pending.getDirty().addBall(oldX, oldY, balls.x[i], balls.y[i]);
+    }
+
+    /**
+     * Plans the click to the given point, the balls are popped by the
+     * simulation at the beginning of its next step. It can be called by any
+     * thread and it never blocks.
+     *
+     * @param px X coordinate of the click.
+     * @param py Y coordinate of the click.
+     * @return False, when too many clicks are waiting and the click was lost.
+     * @author Adam
+     */
+    public boolean click(int px, int py) {
+        return clicks.offer(px, py, System.nanoTime());
+    }
+
+    /**
+     * Pops the balls under all the waiting clicks, in the order, in which
+     * the clicks were made. It is called only by the simulation and the
+     * caller has to hold the monitor of the store. The time from the click
+     * to popping of the balls is recorded in the metrics and the click is
+     * added to the record of the game. The click, which popped something,
+     * is heard.
+     *
+     * @return How many balls were popped.
+     * @author Adam
+     */
+    public int resolveClicks() {
+        int popped = 0;
+        GameRecord current = record;
+        while (clicks.take()) {
+            if (current != null) {
+                current.addClick(frame, clicks.getX(), clicks.getY());
+            }
+            int hit = hitAt(clicks.getX(), clicks.getY(), true);
+            if (hit > 0 && sound != null) {
+                sound.pop(clicks.getTime());
+            }
+            popped += hit;
+            if (resolved != null) {
+                resolved.record(System.nanoTime() - clicks.getTime());
+            }
+        }
+        return popped;
+    }
+
+    /**
+     * Pops all balls, which contain the given point. Only the balls from the
+     * cell of the point and the cells next to it are checked, the other ones
+     * are too far.
+     *
+     * @param px X coordinate of the point.
+     * @param py Y coordinate of the point.
+     * @return How many balls were popped.
+     * @author Adam
+     */
+    public int popAt(float px, float py) {
+        return hitAt(px, py, true);
+    }
+
+    /**
+     * Counts all balls, which contain the given point, but does not pop them.
+     *
+     * @param px X coordinate of the point.
+     * @param py Y coordinate of the point.
+     * @return How many balls contain the point.
+     * @author Adam
+     */
+    public int countAt(float px, float py) {
+        return hitAt(px, py, false);
+    }
+
+    /**
+     * Finds all balls, which contain the given point, in the cell of the
+     * point and in the cells next to it.
+     *
+     * @param px X coordinate of the point.
+     * @param py Y coordinate of the point.
+     * @param pop Should the found balls be popped?
+     * @return How many balls were found.
+     * @author Adam
+     */
+    private int hitAt(float px, float py, boolean pop) {
+        int found = 0;
+        synchronized (balls) {
+            SpatialGrid grid = balls.getGrid();
+            int column = grid.column(px);
+            int row = grid.row(py);
+            for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, grid.getRows() - 1); r++) {
+                for (int c = Math.max(column - 1, 0); c <= Math.min(column + 1, grid.getColumns() - 1); c++) {
+                    int ballId = grid.first(c, r);
+                    while (ballId >= 0) {
+                        //the popped ball leaves the cell, so remember the next
+                        int nextId = grid.next(ballId);
+                        int i = balls.indexOf(ballId);
+                        if (Ball.contains(balls, i, px, py)) {
+                            if (pop) {
+                                removeBall(i);
+                            }
+                            found++;
+                        }
+                        ballId = nextId;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Sets the sound of the popped balls.
+     *
+     * @param sound The sound, or null for no sound.
+     * @author Adam
+     */
+    public void setSound(PopSound sound) {
+        this.sound = sound;
+    }
+
+    /**
+     * Records the time from the click to the popped balls to the given
+     * histogram instead of the shared metrics, e.g. of one shard of the
+     * sessions.
+     *
+     * @param resolved The histogram, or null when the clicks are not measured.
+     * @author Adam
+     */
+    public void measure(Histogram resolved) {
+        this.resolved = resolved;
     }
 
     /**
-     * Adds the new thread to the collection.
+     * Sets the record of the current game, where the resolved clicks are
+     * added.
      *
-     * @param thread The newly created thread.
+     * @param record The record, or null when the game is not recorded.
      * @author Adam
      */
-    public void addThread(Thread thread) {
-        threads.add(thread);
+    public void setRecord(GameRecord record) {
+        this.record = record;
     }
 
     /**
@@ -108,39 +305,158 @@ class BallsData {
      * @author Adam
      */
     public int getScore() {
-        return score;
+        return scoreboard.getTotal();
     }
 
     /**
-     * Removes the thread to the collection.
+     * Returns the scoreboard with the hits by the colors and by the seconds.
      *
-     * @param thread The thread of the ball, which was hit.
+     * @return The scoreboard of the current game.
      * @author Adam
      */
-    public void removeThread(Thread thread) {
-        threads.remove(thread);
+    public Scoreboard getScoreboard() {
+        return scoreboard;
+    }
+
+    /**
+     * Counts the seconds of the game from the last finished frame, e.g.
+     * when the clock of the game starts after the simulation has run
+     * without it since the game was cleared.
+     *
+     * @author Adam
+     */
+    public synchronized void startSeconds() {
+        scoreboard.setStart(frame);
     }
 
     /**
      * The method informs all the registered views, that there has been a data
-     * change and they should repaint their graphics environments.
+     * change and they should repaint their graphics environments. All the
+     * changes marked since the last call are sent in one FrameChange. The
+     * balls of the frame are copied to the snapshot before. When the score
+     * changed during the frame, the listeners get it afterwards.
      *
+     * @param frame The number of the finished simulation frame.
      * @author Adam
      */
-    public void fire() {
-        for (View v : views) {
-            v.dataChange();
+    public synchronized void fire(long frame) {
+        this.frame = frame;
+        synchronized (balls) {
+            FrameChange finished = pending;
+            pending = delivered;
+            delivered = finished;
+            delivered.setFrame(frame);
+            pending.reset();
+            generation++;
+            snapshots.getBack().copy(balls, frame);
+            snapshots.publish();
+        }
+        //without the iterator, so no garbage is made in every frame
+        for (int k = 0; k < views.size(); k++) {
+            views.get(k).post(delivered);
+        }
+        int score = scoreboard.getTotal();
+        if (score != firedScore) {
+            firedScore = score;
+            for (int k = 0; k < listeners.size(); k++) {
+                listeners.get(k).scoreChanged(score);
+            }
         }
     }
 
     /**
-     * Registeres a new view for the data.
+     * Returns the snapshot of the newest finished frame. The snapshot does
+     * not change, until this function is called again, so it can be painted
+     * without any lock. Only one thread (the EDT) may call it.
+     *
+     * @return The newest snapshot.
+     * @author Adam
+     */
+    public FrameSnapshot acquireSnapshot() {
+        return snapshots.acquire();
+    }
+
+    /**
+     * Registeres a new view for the data. The view gets the changes in its
+     * own thread.
      *
      * @param view A class implementing the View interface.
      * @author Adam
      */
     public void register(View view) {
-        views.add(view);
+        register(view, false);
+    }
+
+    /**
+     * Registeres a new view for the data.
+     *
+     * @param view A class implementing the View interface.
+     * @param direct True, when the view has to get the changes right in the
+     * simulation thread (it must be fast then), false for its own thread.
+     * @author Adam
+     */
+    public void register(View view, boolean direct) {
+        ViewDispatcher dispatcher = new ViewDispatcher(view, direct, size, size);
+        dispatcher.start();
+        views.add(dispatcher);
+    }
+
+    /**
+     * Removes the view and stops its thread.
+     *
+     * @param view The registered view.
+     * @author Adam
+     */
+    public void unregister(View view) {
+        for (ViewDispatcher dispatcher : views) {
+            if (dispatcher.getView() == view) {
+                views.remove(dispatcher);
+                dispatcher.close();
+            }
+        }
+    }
+
+    /**
+     * Registeres a new listener of the score and the time.
+     *
+     * @param listener A class implementing the GameListener interface.
+     * @author Adam
+     */
+    public void listen(GameListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes the listener of the score and the time.
+     *
+     * @param listener The registered listener.
+     * @author Adam
+     */
+    public void forget(GameListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Informs all the listeners about the time left.
+     *
+     * @param timeleft The time left in ms.
+     * @author Adam
+     */
+    public void fireTime(int timeleft) {
+        for (int k = 0; k < listeners.size(); k++) {
+            listeners.get(k).timeChanged(timeleft);
+        }
+    }
+
+    /**
+     * Informs all the listeners, that the game has ended.
+     *
+     * @author Adam
+     */
+    public void fireEnd() {
+        for (int k = 0; k < listeners.size(); k++) {
+            listeners.get(k).gameEnded(getScore());
+        }
     }
 
     /**
@@ -149,12 +465,13 @@ class BallsData {
      * @author Adam
      */
     public void clear() {
-        for (Ball ball : balls) {
-            ball.setAlive(false);
+        synchronized (balls) {
+            balls.clear();
+            pending.getDirty().setFull();
         }
-        threads.clear();
-        balls.clear();
 
-        score = 0;
+        scoreboard.start(frame);
+        //the game may be paused, so the views are informed right now
+        fire(frame);
     }
 }
@@ -1,13 +1,21 @@
 package game;
 
 import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
-import java.awt.geom.Ellipse2D;
 import javax.swing.*;
 
 /**
  * The main panel representing the game environemnt itself, it also takes care
- * of the animation of the balls and their destroying.
+ * of the animation of the balls and their destroying. Only the parts of the
+ * panel, where some balls changed, are repainted after each frame. The balls
+ * are painted from the snapshot of the newest finished frame, so the
+ * painting never waits for the simulation and never shows a half-moved
+ * frame. The HUD with the metrics of the game can be shown over the balls.
+ * This is the passive way of painting, the ArenaCanvas paints actively. The
+ * arena can be bigger than the panel (the system property game.arena), the
+ * panel shows it through the viewport, which can be moved and zoomed.
  *
  * @author Adam
  */
@@ -15,8 +23,19 @@ class BallsPanel extends JPanel implements BPInterface {
 
     private int refreshInterval = 1000; //how often will new balls be created in ms.
     private BallHandler handler; //handler, which creates new balls
-    public static final int DIMENSION = 400; //dimension of the square environenment
     private boolean paused = false; //is the game paused right now?
+    private BallRenderer renderer = new BallRenderer(); //draws the balls
+    private Rectangle clip = new Rectangle(); //the painted part of the panel
+    private DirtyRegion dirty; //region waiting to be repainted
+    private DirtyRegion painting; //region being repainted right now
+    private boolean scheduled = false; //is the repainting already planned?
+    private final Object dirtyLock = new Object(); //guards the dirty region
+    private Runnable repainter = new Repainter(); //repaints the dirty region
+    private FrameSnapshot shown; //the snapshot of the painted frame
+    private long scheduledAt; //when was the repainting planned, in ns
+    private long lastRepaint = 0; //when was the last frame repainted, in ns, 0 after a pause
+    private Hud hud = new Hud(); //the HUD with the metrics
+    private Viewport viewport = new Viewport(GameConfig.ARENA, GameConfig.DIMENSION, GameConfig.DIMENSION); //the shown part of the arena
 
     /**
      * Constructor creates the ball handler and draws the game environment. It
@@ -25,11 +44,20 @@ class BallsPanel extends JPanel implements BPInterface {
      * @author Adam
      */
     public BallsPanel() {
-        handler = new BallHandler(refreshInterval, DIMENSION);
-        this.setPreferredSize(new Dimension(DIMENSION, DIMENSION));
+        handler = new BallHandler(refreshInterval, GameConfig.ARENA);
+        this.setPreferredSize(new Dimension(GameConfig.DIMENSION, GameConfig.DIMENSION));
         this.setBorder(BorderFactory.createLineBorder(Color.BLACK, 5));
+        dirty = new DirtyRegion(GameConfig.DIMENSION, GameConfig.DIMENSION);
+        painting = new DirtyRegion(GameConfig.DIMENSION, GameConfig.DIMENSION);
         BallsData.getInstance().register(this);
         this.addMouseListener(this);
+        this.addKeyListener(new HudKey());
+        ViewportControl control = new ViewportControl(viewport, new ViewChange());
+        this.addMouseListener(control);
+        this.addMouseMotionListener(control);
+        this.addMouseWheelListener(control);
+        this.addKeyListener(control);
+        this.setFocusable(true);
     }
 
     /**
@@ -46,6 +74,8 @@ class BallsPanel extends JPanel implements BPInterface {
             handler.stop();
             paused = true;
         }
+        //the paused time is not a jitter
+        lastRepaint = 0;
     }
 
     /**
@@ -55,12 +85,12 @@ class BallsPanel extends JPanel implements BPInterface {
      */
     public void restart() {
         handler.restart();
-        BallsData.getInstance().clear();
     }
 
     /**
      * Main painting function, it draws the borders and all balls in the given
-     * graphics environment.
+     * graphics environment. Only the balls inside the clip are drawn. At the
+     * end it draws the HUD, when it is shown.
      *
      * @param graphics The given graphics environment.
      * @author Adam
@@ -69,10 +99,18 @@ class BallsPanel extends JPanel implements BPInterface {
         Graphics2D g2d = (Graphics2D) graphics;
         //paints the borders
         super.paintComponent(g2d);
-        //and all balls
-        for (Ball ball : BallsData.getInstance().getData()) {
-            g2d.setColor(ball.getColor());
-            ball.draw(g2d);
+        //stays the whole panel, when there is no clip
+        clip.setBounds(0, 0, getWidth(), getHeight());
+        g2d.getClipBounds(clip);
+        //and all balls, which touch the clip
+        long start = System.nanoTime();
+        if (shown == null) {
+            shown = BallsData.getInstance().acquireSnapshot();
+        }
+        renderer.paint(g2d, shown, clip, viewport);
+        Metrics.PAINT.record(System.nanoTime() - start);
+        if (hud.isShown() && clip.intersects(hud.getBounds())) {
+            hud.paint(g2d);
         }
     }
 
@@ -81,34 +119,66 @@ class BallsPanel extends JPanel implements BPInterface {
      * means, that the View should repaint its graphics based on the data
      * change.
      *
+     * @param change All the changes made during the frame.
      * @author Adam
      */
     @Override
-    public void dataChange() {
-        //repaint indirectly calls the paintComponent()
-        repaint();
+    public void dataChange(FrameChange change) {
+        //the region is only collected, it is repainted later on the EDT
+        synchronized (dirtyLock) {
+            addVisible(change.getDirty());
+            if (scheduled || dirty.isEmpty()) {
+                return;
+            }
+            scheduled = true;
+            scheduledAt = System.nanoTime();
+        }
+        SwingUtilities.invokeLater(repainter);
+    }
+
+    /**
+     * Adds the shown part of the changed region of the arena to the dirty
+     * region of the panel. The density tiles change everywhere, so the whole
+     * panel is repainted, when they are shown.
+     *
+     * @param region The changed region of the arena.
+     * @author Adam
+     */
+    private void addVisible(DirtyRegion region) {
+        if (region.isFull() || viewport.getScale() < BallRenderer.LOD_SCALE) {
+            dirty.setFull();
+            return;
+        }
+        double scale = viewport.getScale();
+        for (int k = 0; k < region.getCount(); k++) {
+            Rectangle r = region.get(k);
+            int left = Math.max(0, (int) Math.floor((r.x - viewport.getX()) * scale));
+            int top = Math.max(0, (int) Math.floor((r.y - viewport.getY()) * scale));
+            int right = Math.min(getWidth(), (int) Math.ceil((r.x + r.width - viewport.getX()) * scale));
+            int bottom = Math.min(getHeight(), (int) Math.ceil((r.y + r.height - viewport.getY()) * scale));
+            if (left < right && top < bottom) {
+                dirty.add(left, top, right - left, bottom - top);
+            }
+        }
     }
 
     /**
-     * Main function which represents "hitting" the ball.
-     * 
+     * Main function which represents "hitting" the ball. The click is only
+     * queued, the balls are popped by the simulation, so the EDT never waits
+     * for the balls. The other buttons move the viewport.
+     *
      * @param e object representing the mouse press event
      * @author Adam
      */
     @Override
-    synchronized public void mousePressed(MouseEvent e) {
+    public void mousePressed(MouseEvent e) {
         //hitting the balls is allowed only when the game is not paused
-        if (!paused) {
-            //look to all balls, if the coordinates of the click are inside one
-            for (Ball ball : BallsData.getInstance().getData()) {
-                Ellipse2D oval = ball.getOval();
-                if (oval.contains(e.getX(), e.getY())) {
-                    //if it is so, destroy the ball
-                    ball.setAlive(false);
-                    BallsData.getInstance().removeBall(ball);
-                }
-            }
+        if (!paused && SwingUtilities.isLeftMouseButton(e)) {
+            //destroy all balls, which contain the coordinates of the click
+            BallsData.getInstance().click(Math.round(viewport.toArenaX(e.getX())), Math.round(viewport.toArenaY(e.getY())));
         }
+        //the panel takes the focus, so it gets the keys
+        requestFocusInWindow();
     }
 
     /**
@@ -150,4 +220,93 @@ class BallsPanel extends JPanel implements BPInterface {
     @Override
     public void mouseExited(MouseEvent e) {
     }
+
+    /**
+     * Inner class, which repaints the collected dirty region on the EDT.
+     *
+     * @author Adam
+     */
+    class Repainter implements Runnable {
+
+        /**
+         * Takes the dirty region and repaints each its rectangle right away,
+         * or the whole panel, when the region is full. All the rectangles
+         * are painted from the same newest snapshot. The HUD is repainted
+         * only when its lines are refreshed. How much the time between two
+         * repainted frames differs from the step of the simulation is
+         * recorded as the jitter.
+         *
+         * @author Adam
+         */
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            synchronized (dirtyLock) {
+                DirtyRegion collected = dirty;
+                dirty = painting;
+                painting = collected;
+                scheduled = false;
+                Metrics.DISPATCH.record(now - scheduledAt);
+            }
+            shown = BallsData.getInstance().acquireSnapshot();
+            if (lastRepaint != 0) {
+                Metrics.JITTER.record(Math.abs(now - lastRepaint - Simulation.STEP_NANOS));
+            }
+            lastRepaint = now;
+            if (hud.refresh(BallsPanel.this, getInsets(), now)) {
+                Rectangle bounds = hud.getBounds();
+                painting.add(bounds.x, bounds.y, bounds.width, bounds.height);
+            }
+            if (painting.isFull()) {
+                //repaint indirectly calls the paintComponent()
+                repaint();
+            } else {
+                for (int k = 0; k < painting.getCount(); k++) {
+                    paintImmediately(painting.get(k));
+                }
+            }
+            painting.reset();
+        }
+    }
+
+    /**
+     * Inner class, which repaints the panel, when the viewport has changed.
+     *
+     * @author Adam
+     */
+    class ViewChange implements Runnable {
+
+        /**
+         * Repaints the whole panel.
+         *
+         * @author Adam
+         */
+        @Override
+        public void run() {
+            repaint();
+        }
+    }
+
+    /**
+     * Inner class, which switches the HUD on and off by the H key.
+     *
+     * @author Adam
+     */
+    class HudKey extends KeyAdapter {
+
+        /**
+         * Shows or hides the HUD.
+         *
+         * @param e The key event.
+         * @author Adam
+         */
+        @Override
+        public void keyPressed(KeyEvent e) {
+            if (e.getKeyCode() == KeyEvent.VK_H) {
+                hud.toggle();
+                hud.update(BallsPanel.this, getInsets());
+                repaint();
+            }
+        }
+    }
 }
\ No newline at end of file
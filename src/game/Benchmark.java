@@ -0,0 +1,797 @@
+package game;
+
+import com.sun.management.OperatingSystemMXBean;
+import com.sun.management.ThreadMXBean;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Main class, which measures the speed of the main parts of the game without
+ * any window. The names of the cases can be given as arguments to run only
+ * some of them.
+ *
+ * <p>The movement of the balls, checking of the bounds, creating of the
+ * balls, hitting them, the collisions (with all three ways of finding the
+ * colliding pairs) and the painting (of the window and of the whole arena)
+ * are measured for 10 to 100000 balls. Every case is warmed up and then run
+ * for a few iterations, and its throughput (operations per second) and
+ * allocation rate (bytes per operation) are printed, so the numbers can be
+ * compared between versions of the game.
+ *
+ * <p>The case "tasks" compares the old way of moving the balls - every ball
+ * in its own sleeping thread - on platform and virtual threads, and
+ * "scaling" prints the speedup of the ParallelStepper. The benchmark only
+ * measures, the checks of the game as a whole (no garbage, flat restarts,
+ * the same balls from the ParallelStepper and from the client of the
+ * server) are the tests.
+ *
+ * @author Adam
+ */
+public class Benchmark {
+
+    private static final int[] COUNTS = {10, 100, 1000, 10000, 100000}; //numbers of balls
+    private static final long ITERATION = 200000000L; //length of one iteration in ns
+    private static final int WARMUP = 3; //number of warmup iterations
+    private static final int MEASURE = 5; //number of measured iterations
+    private static final int[] TASK_COUNTS = {1000, 10000, 20000}; //numbers of ball threads
+    private static final int[] SCALING_COUNTS = {100000, 250000, 500000, 1000000}; //numbers of balls moved in parallel
+    private static final Random generator = new Random(42); //generator of the balls
+    private static final Object threadBean = ManagementFactory.getThreadMXBean(); //counts the allocated bytes, looked up once, because the lookup allocates
+
+    /**
+     * Runs all the cases (or the ones given by name) for all numbers of balls.
+     *
+     * @param args Names of the cases to run, all cases when empty.
+     * @author Adam
+     */
+    public static void main(String[] args) {
+        Case[] cases = {new Move(), new CheckBounds(), new Step(), new CreateBall(), new HitTest(), new HitScan(),
+            new Collide("collideBrute", Collisions.BroadPhase.BRUTE_FORCE), new Collide("collideSort", Collisions.BroadPhase.FULL_SORT),
+            new Collide("collideSweep", Collisions.BroadPhase.INCREMENTAL), new Render("renderView", false), new Render("renderAll", true)};
+        boolean header = false;
+        for (Case c : cases) {
+            if (!selected(c.getName(), args)) {
+                continue;
+            }
+            if (!header) {
+                System.out.printf("%-12s %8s %16s %12s%n", "case", "balls", "ops/s", "bytes/op");
+                header = true;
+            }
+            for (int n : COUNTS) {
+                if (!c.supports(n)) {
+                    continue;
+                }
+                c.setUp(n);
+                measure(c, n);
+                c.tearDown();
+            }
+        }
+        if (selected("tasks", args)) {
+            System.out.printf("%n%-12s %8s %16s %12s %12s%n", "tasks", "balls", "wakeups/s", "cpu ns/wake", "memory MB");
+            for (int n : TASK_COUNTS) {
+                tasks(false, n);
+                if (Threads.isVirtualAvailable()) {
+                    tasks(true, n);
+                }
+            }
+        }
+        if (selected("scaling", args)) {
+            scaling();
+        }
+    }
+
+    /**
+     * Moves many balls by the ParallelStepper with 1, 2, 4... threads up to
+     * the number of cores and prints the speedup against one thread.
+     *
+     * @author Adam
+     */
+    static void scaling() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%n%-12s %8s %8s %16s %8s%n", "scaling", "balls", "threads", "balls/s", "speedup");
+        for (int n : SCALING_COUNTS) {
+            double single = 0;
+            for (int threads = 1; threads <= cores; threads = threads < cores && threads * 2 > cores ? cores : threads * 2) {
+                ParallelStep c = new ParallelStep(threads);
+                c.setUp(n);
+                for (int k = 0; k < WARMUP; k++) {
+                    iteration(c);
+                }
+                long ops = 0;
+                long start = System.nanoTime();
+                for (int k = 0; k < MEASURE; k++) {
+                    ops += iteration(c);
+                }
+                double perSecond = ops / ((System.nanoTime() - start) / 1e9);
+                c.tearDown();
+                if (threads == 1) {
+                    single = perSecond;
+                }
+                System.out.printf("%-12s %8d %8d %16.0f %8.2f%n", "parallelStep", n, threads, perSecond, perSecond / single);
+            }
+        }
+    }
+
+    /**
+     * Moves every ball in its own thread, which sleeps 20 ms before each
+     * step, and measures how much it costs.
+     *
+     * @param virtual Should the threads be virtual?
+     * @param n The number of balls.
+     * @author Adam
+     */
+    static void tasks(boolean virtual, int n) {
+        BallStore balls = new BallStore(GameConfig.DIMENSION, GameConfig.DIMENSION);
+        fill(balls, n);
+        LongAdder wakeups = new LongAdder();
+        BallTask[] tasks = new BallTask[n];
+        Thread[] threads = new Thread[n];
+        System.gc();
+        long memory = usedMemory();
+        ThreadFactory factory = Threads.factory(virtual, "Ball");
+        int started = 0;
+        try {
+            for (; started < n; started++) {
+                tasks[started] = new BallTask(balls, started, wakeups);
+                threads[started] = factory.newThread(tasks[started]);
+                threads[started].start();
+            }
+        } catch (OutOfMemoryError ex) {
+            //the system does not allow so many threads
+            System.out.printf("%-12s %8d %s%n", virtual ? "virtual" : "platform", n, "only " + started + " threads could be started");
+            stopTasks(tasks, threads, started);
+            return;
+        }
+        try {
+            Thread.sleep(1000);
+            memory = usedMemory() - memory;
+            long cpu = processCpuTime();
+            long count = wakeups.sum();
+            long start = System.nanoTime();
+            Thread.sleep(2000);
+            cpu = processCpuTime() - cpu;
+            count = wakeups.sum() - count;
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-12s %8d %16.0f %12.0f %12.1f%n", virtual ? "virtual" : "platform", n, count / seconds, (double) cpu / count, memory / 1048576.0);
+        } catch (InterruptedException ex) {
+            System.out.println("Benchmark was interrupted!");
+        }
+        stopTasks(tasks, threads, n);
+    }
+
+    /**
+     * Stops the ball tasks and waits until their threads end.
+     *
+     * @param tasks The ball tasks.
+     * @param threads The threads of the tasks.
+     * @param count How many of them were started.
+     * @author Adam
+     */
+    private static void stopTasks(BallTask[] tasks, Thread[] threads, int count) {
+        for (int i = 0; i < count; i++) {
+            tasks[i].stop();
+        }
+        try {
+            for (int i = 0; i < count; i++) {
+                threads[i].join();
+            }
+        } catch (InterruptedException ex) {
+            System.out.println("Benchmark was interrupted!");
+        }
+    }
+
+    /**
+     * Returns the memory used by the process - the resident size on Linux,
+     * the used heap elsewhere.
+     *
+     * @return The used memory in bytes.
+     * @author Adam
+     */
+    static long usedMemory() {
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException ex) {
+            //not Linux, the heap will do
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Returns the CPU time used by the whole process, or 0 when the JVM can
+     * not tell it.
+     *
+     * @return The CPU time in ns.
+     * @author Adam
+     */
+    static long processCpuTime() {
+        Object bean = ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof OperatingSystemMXBean) {
+            return ((OperatingSystemMXBean) bean).getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    /**
+     * Tells, if the case should be run.
+     *
+     * @param name The name of the case.
+     * @param args The names given as arguments.
+     * @return True, if the case was given or no case was given.
+     * @author Adam
+     */
+    static boolean selected(String name, String[] args) {
+        if (args.length == 0) {
+            return true;
+        }
+        for (String arg : args) {
+            if (arg.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Warms up and measures one case and prints the result.
+     *
+     * @param c The measured case.
+     * @param n The number of balls.
+     * @author Adam
+     */
+    static void measure(Case c, int n) {
+        for (int k = 0; k < WARMUP; k++) {
+            iteration(c);
+        }
+        long ops = 0;
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int k = 0; k < MEASURE; k++) {
+            ops += iteration(c);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        bytes = bytes < 0 ? -1 : allocatedBytes() - bytes;
+        System.out.printf("%-12s %8d %16.0f %12.2f%n", c.getName(), n, ops / seconds, bytes < 0 ? Double.NaN : (double) bytes / ops);
+    }
+
+    /**
+     * Runs the case repeatedly for the length of one iteration.
+     *
+     * @param c The measured case.
+     * @return How many operations were performed.
+     * @author Adam
+     */
+    private static long iteration(Case c) {
+        long ops = 0;
+        long end = System.nanoTime() + ITERATION;
+        do {
+            ops += c.run();
+        } while (System.nanoTime() < end);
+        return ops;
+    }
+
+    /**
+     * Returns how many bytes were allocated by the current thread, or -1 when
+     * the JVM can not tell it. The bean is not looked up here, the lookup
+     * makes a different amount of garbage every time.
+     *
+     * @return The allocated bytes.
+     * @author Adam
+     */
+    static long allocatedBytes() {
+        if (threadBean instanceof ThreadMXBean) {
+            return ((ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Fills the store with random balls.
+     *
+     * @param balls The store.
+     * @param n How many balls should be added.
+     * @author Adam
+     */
+    static void fill(BallStore balls, int n) {
+        fill(balls, n, GameConfig.DIMENSION);
+    }
+
+    /**
+     * Fills the store with random balls in the environment of the given
+     * size.
+     *
+     * @param balls The store.
+     * @param n How many balls should be added.
+     * @param size The size of the environment.
+     * @author Adam
+     */
+    static void fill(BallStore balls, int n, int size) {
+        synchronized (balls) {
+            for (int i = 0; i < n; i++) {
+                balls.add(generator.nextInt(size), generator.nextInt(size), generator.nextInt(4) + 1, generator.nextInt(4) + 1, generator.nextInt(6));
+            }
+        }
+    }
+
+    /**
+     * The task moving one ball in its own thread, the way the balls were
+     * moved before the Simulation. Every task moves a different ball, so the
+     * store is not locked and the grid is not updated.
+     *
+     * @author Adam
+     */
+    static class BallTask implements Runnable {
+
+        private BallStore balls; //the store with the ball
+        private int i; //the index of the ball
+        private LongAdder wakeups; //counter of all wakeups
+        private volatile boolean alive = true; //should the task continue?
+
+        /**
+         * Constructor remembers the ball of the task.
+         *
+         * @param balls The store with the ball.
+         * @param i The index of the ball.
+         * @param wakeups Counter of all wakeups.
+         * @author Adam
+         */
+        BallTask(BallStore balls, int i, LongAdder wakeups) {
+            this.balls = balls;
+            this.i = i;
+            this.wakeups = wakeups;
+        }
+
+        /**
+         * Stops the task after its next wakeup.
+         *
+         * @author Adam
+         */
+        void stop() {
+            alive = false;
+        }
+
+        /**
+         * Sleeps for 20 ms and moves the ball, until the task is stopped.
+         *
+         * @author Adam
+         */
+        @Override
+        public void run() {
+            while (alive) {
+                try {
+                    Thread.sleep(Simulation.STEP);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                balls.x[i] += balls.vx[i];
+                balls.y[i] += balls.vy[i];
+                Ball.checkBounds(balls, i);
+                wakeups.increment();
+            }
+        }
+    }
+
+    /**
+     * One measured case.
+     *
+     * @author Adam
+     */
+    abstract static class Case {
+
+        /**
+         * Returns the name of the case.
+         *
+         * @return The name.
+         * @author Adam
+         */
+        abstract String getName();
+
+        /**
+         * Prepares the given number of balls.
+         *
+         * @param n The number of balls.
+         * @author Adam
+         */
+        abstract void setUp(int n);
+
+        /**
+         * Runs one invocation of the case.
+         *
+         * @return How many operations were performed.
+         * @author Adam
+         */
+        abstract int run();
+
+        /**
+         * Tells, if the case can be run with the given number of balls in a
+         * reasonable time.
+         *
+         * @param n The number of balls.
+         * @return True, when it should be run.
+         * @author Adam
+         */
+        boolean supports(int n) {
+            return true;
+        }
+
+        /**
+         * Removes the balls after the case.
+         *
+         * @author Adam
+         */
+        void tearDown() {
+            BallsData.getInstance().clear();
+        }
+    }
+
+    /**
+     * Moves all balls once, one operation is the move of one ball.
+     *
+     * @author Adam
+     */
+    static class Move extends Case {
+
+        private BallStore balls; //the moved balls
+
+        @Override
+        String getName() {
+            return "move";
+        }
+
+        @Override
+        void setUp(int n) {
+            balls = new BallStore(GameConfig.DIMENSION, GameConfig.DIMENSION);
+            fill(balls, n);
+        }
+
+        @Override
+        int run() {
+            for (int i = 0; i < balls.size(); i++) {
+                Ball.move(balls, i);
+            }
+            return balls.size();
+        }
+    }
+
+    /**
+     * Checks the bounds of all balls, one operation is one ball.
+     *
+     * @author Adam
+     */
+    static class CheckBounds extends Case {
+
+        private BallStore balls; //the checked balls
+
+        @Override
+        String getName() {
+            return "checkBounds";
+        }
+
+        @Override
+        void setUp(int n) {
+            balls = new BallStore(GameConfig.DIMENSION, GameConfig.DIMENSION);
+            fill(balls, n);
+        }
+
+        @Override
+        int run() {
+            for (int i = 0; i < balls.size(); i++) {
+                Ball.checkBounds(balls, i);
+            }
+            return balls.size();
+        }
+    }
+
+    /**
+     * Performs one step of the simulation including the marking of changes,
+     * one operation is one ball.
+     *
+     * @author Adam
+     */
+    static class Step extends Case {
+
+        private Simulation simulation = new Simulation(); //the stepped simulation
+
+        @Override
+        String getName() {
+            return "step";
+        }
+
+        @Override
+        void setUp(int n) {
+            fill(BallsData.getInstance().getData(), n);
+        }
+
+        @Override
+        int run() {
+            simulation.step();
+            simulation.finishFrame();
+            return BallsData.getInstance().getData().size();
+        }
+    }
+
+    /**
+     * Moves all balls by the ParallelStepper with the given number of
+     * threads, one operation is one ball. The environment is as big, that
+     * there is one ball in every square of 2x2 ball sizes.
+     *
+     * @author Adam
+     */
+    static class ParallelStep extends Case {
+
+        private int threads; //number of threads moving the balls
+        private ForkJoinPool pool; //the pool of the threads
+        private ParallelStepper stepper; //the measured stepper
+        private BallStore balls; //the moved balls
+
+        /**
+         * Constructor of the case with the given number of threads.
+         *
+         * @param threads The number of threads.
+         * @author Adam
+         */
+        ParallelStep(int threads) {
+            this.threads = threads;
+        }
+
+        @Override
+        String getName() {
+            return "parallelStep";
+        }
+
+        @Override
+        void setUp(int n) {
+            int size = (int) Math.sqrt(n) * 2 * Ball.R;
+            balls = new BallStore(size, size);
+            fill(balls, n, size);
+            pool = new ForkJoinPool(threads);
+            stepper = new ParallelStepper(pool);
+        }
+
+        @Override
+        int run() {
+            synchronized (balls) {
+                stepper.step(null, balls);
+            }
+            return balls.size();
+        }
+
+        @Override
+        void tearDown() {
+            pool.shutdown();
+            balls = null;
+        }
+    }
+
+    /**
+     * Creates the balls through the handler, one operation is one ball.
+     *
+     * @author Adam
+     */
+    static class CreateBall extends Case {
+
+        private BallHandler handler = new BallHandler(1000, GameConfig.DIMENSION); //creates the balls
+        private int n; //how many balls are created at once
+
+        @Override
+        String getName() {
+            return "createBall";
+        }
+
+        @Override
+        void setUp(int n) {
+            this.n = n;
+        }
+
+        @Override
+        int run() {
+            for (int i = 0; i < n; i++) {
+                handler.createBall();
+            }
+            BallsData.getInstance().clear();
+            return n;
+        }
+    }
+
+    /**
+     * Moves all balls and bounces the colliding ones, one operation is one
+     * ball. The environment is as big, that there is one ball in every
+     * square of 2x2 ball sizes.
+     *
+     * @author Adam
+     */
+    static class Collide extends Case {
+
+        private String name; //the name of the case
+        private Collisions.BroadPhase broadPhase; //the way of finding the pairs
+        private Collisions collisions; //the measured collisions
+        private BallStore balls; //the moved balls
+
+        /**
+         * Constructor of the case with the given way of finding the pairs.
+         *
+         * @param name The name of the case.
+         * @param broadPhase The way of finding the pairs.
+         * @author Adam
+         */
+        Collide(String name, Collisions.BroadPhase broadPhase) {
+            this.name = name;
+            this.broadPhase = broadPhase;
+        }
+
+        @Override
+        String getName() {
+            return name;
+        }
+
+        @Override
+        boolean supports(int n) {
+            return broadPhase != Collisions.BroadPhase.BRUTE_FORCE || n <= 10000;
+        }
+
+        @Override
+        void setUp(int n) {
+            int size = Math.max(GameConfig.DIMENSION, (int) Math.sqrt(n) * 2 * Ball.R);
+            balls = new BallStore(size, size);
+            fill(balls, n, size);
+            collisions = new Collisions(broadPhase);
+        }
+
+        @Override
+        int run() {
+            for (int i = 0; i < balls.size(); i++) {
+                Ball.move(balls, i);
+            }
+            collisions.resolve(null, balls);
+            return balls.size();
+        }
+    }
+
+    /**
+     * Paints the frame of the arena with one ball in every square of 2x2 ball
+     * sizes into an image of the window size, one operation is one frame.
+     * The view shows either the part of the arena of the window size, or the
+     * whole arena zoomed out.
+     *
+     * @author Adam
+     */
+    static class Render extends Case {
+
+        private String name; //the name of the case
+        private boolean zoomedOut; //should the whole arena be shown?
+        private BallRenderer renderer = new BallRenderer(); //the measured renderer
+        private BufferedImage image; //the painted image
+        private Graphics2D graphics; //graphics of the image
+        private Rectangle clip = new Rectangle(0, 0, GameConfig.DIMENSION, GameConfig.DIMENSION); //the whole image
+        private FrameSnapshot frame; //the painted frame
+        private Viewport viewport; //the shown part of the arena
+
+        /**
+         * Constructor of the case.
+         *
+         * @param name The name of the case.
+         * @param zoomedOut Should the whole arena be shown?
+         * @author Adam
+         */
+        Render(String name, boolean zoomedOut) {
+            this.name = name;
+            this.zoomedOut = zoomedOut;
+        }
+
+        @Override
+        String getName() {
+            return name;
+        }
+
+        @Override
+        void setUp(int n) {
+            int size = Math.max(GameConfig.DIMENSION, (int) Math.sqrt(n) * 2 * Ball.R);
+            BallStore balls = new BallStore(size, size);
+            fill(balls, n, size);
+            frame = new FrameSnapshot(size, size);
+            synchronized (balls) {
+                frame.copy(balls, 0);
+            }
+            viewport = new Viewport(size, GameConfig.DIMENSION, GameConfig.DIMENSION);
+            if (zoomedOut) {
+                viewport.zoom(0, 0, 0);
+            } else {
+                //the middle of the arena
+                viewport.pan(size / 2, size / 2);
+            }
+            image = new BufferedImage(GameConfig.DIMENSION, GameConfig.DIMENSION, BufferedImage.TYPE_INT_RGB);
+            graphics = image.createGraphics();
+        }
+
+        @Override
+        int run() {
+            graphics.clearRect(0, 0, GameConfig.DIMENSION, GameConfig.DIMENSION);
+            renderer.paint(graphics, frame, clip, viewport);
+            return 1;
+        }
+
+        @Override
+        void tearDown() {
+            graphics.dispose();
+            frame = null;
+        }
+    }
+
+    /**
+     * Finds the balls under a random point through the spatial grid, one
+     * operation is one click.
+     *
+     * @author Adam
+     */
+    static class HitTest extends Case {
+
+        private Random clicks = new Random(7); //generator of the clicks
+
+        @Override
+        String getName() {
+            return "hitTest";
+        }
+
+        @Override
+        void setUp(int n) {
+            fill(BallsData.getInstance().getData(), n);
+        }
+
+        @Override
+        int run() {
+            BallsData.getInstance().countAt(clicks.nextInt(GameConfig.DIMENSION), clicks.nextInt(GameConfig.DIMENSION));
+            return 1;
+        }
+    }
+
+    /**
+     * Finds the balls under a random point by checking all of them, one
+     * operation is one click. It is there to compare with the grid.
+     *
+     * @author Adam
+     */
+    static class HitScan extends Case {
+
+        private Random clicks = new Random(7); //generator of the clicks
+
+        @Override
+        String getName() {
+            return "hitScan";
+        }
+
+        @Override
+        void setUp(int n) {
+            fill(BallsData.getInstance().getData(), n);
+        }
+
+        @Override
+        int run() {
+            float px = clicks.nextInt(GameConfig.DIMENSION);
+            float py = clicks.nextInt(GameConfig.DIMENSION);
+            BallStore balls = BallsData.getInstance().getData();
+            int found = 0;
+            synchronized (balls) {
+                for (int i = 0; i < balls.size(); i++) {
+                    if (Ball.contains(balls, i, px, py)) {
+                        found++;
+                    }
+                }
+            }
+            return found >= 0 ? 1 : 0;
+        }
+    }
+}
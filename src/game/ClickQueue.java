@@ -0,0 +1,135 @@
+package game;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded queue of the clicks, which may be filled by many threads and
+ * emptied by one thread, without any lock. The clicks are kept in a ring of
+ * slots and every slot has its sequence number, which tells if the slot is
+ * free for the writer of the given position, or full for the reader (the
+ * queue of Dmitry Vyukov). A writer only takes its position by one atomic
+ * operation and then fills the slot, so the EDT never waits for the
+ * simulation. When the queue is full, the click is refused.
+ *
+ * @author Adam
+ */
+class ClickQueue {
+
+    private int mask; //capacity - 1, the capacity is a power of two
+    private AtomicLongArray sequences; //sequence numbers of the slots
+    private int[] x; //x coordinates of the clicks
+    private int[] y; //y coordinates of the clicks
+    private long[] time; //when were the clicks made, in ns
+    private AtomicLong tail = new AtomicLong(); //position of the next written click
+    private long head = 0; //position of the next read click, only the reader uses it
+    private int takenX; //x coordinate of the last read click
+    private int takenY; //y coordinate of the last read click
+    private long takenTime; //time of the last read click
+
+    /**
+     * Constructor creates the empty queue.
+     *
+     * @param capacity The least number of clicks, which fit in the queue.
+     * @author Adam
+     */
+    public ClickQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int k = 0; k < size; k++) {
+            sequences.set(k, k);
+        }
+        x = new int[size];
+        y = new int[size];
+        time = new long[size];
+    }
+
+    /**
+     * Adds the click at the end of the queue. It can be called by any
+     * thread.
+     *
+     * @param px X coordinate of the click.
+     * @param py Y coordinate of the click.
+     * @param nanos When was the click made, in ns.
+     * @return False, when the queue is full and the click was refused.
+     * @author Adam
+     */
+    public boolean offer(int px, int py, long nanos) {
+        long position = tail.get();
+        while (true) {
+            long sequence = sequences.get((int) position & mask);
+            if (sequence == position) {
+                //the slot is free, try to take it
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (sequence < position) {
+                //the slot was not read yet, the queue is full
+                return false;
+            } else {
+                //another writer took the position
+                position = tail.get();
+            }
+        }
+        int slot = (int) position & mask;
+        x[slot] = px;
+        y[slot] = py;
+        time[slot] = nanos;
+        //the volatile write publishes the click to the reader
+        sequences.set(slot, position + 1);
+        return true;
+    }
+
+    /**
+     * Takes the first click from the queue, its attributes are then returned
+     * by getX(), getY() and getTime(). It can be called only by one thread.
+     *
+     * @return False, when the queue is empty.
+     * @author Adam
+     */
+    public boolean take() {
+        int slot = (int) head & mask;
+        if (sequences.get(slot) != head + 1) {
+            return false;
+        }
+        takenX = x[slot];
+        takenY = y[slot];
+        takenTime = time[slot];
+        //the slot is free for the writer one round later
+        sequences.set(slot, head + mask + 1);
+        head++;
+        return true;
+    }
+
+    /**
+     * Returns the x coordinate of the last taken click.
+     *
+     * @return The x coordinate.
+     * @author Adam
+     */
+    public int getX() {
+        return takenX;
+    }
+
+    /**
+     * Returns the y coordinate of the last taken click.
+     *
+     * @return The y coordinate.
+     * @author Adam
+     */
+    public int getY() {
+        return takenY;
+    }
+
+    /**
+     * Returns the time of the last taken click.
+     *
+     * @return The time in ns.
+     * @author Adam
+     */
+    public long getTime() {
+        return takenTime;
+    }
+}
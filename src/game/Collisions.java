@@ -0,0 +1,269 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * Elastic collisions of the balls with each other. All balls have the same
+ * size and the same mass, so two colliding balls only exchange the parts of
+ * their velocities along the line between their centers. To avoid checking
+ * every pair of balls, the balls are kept sorted by their x coordinate and
+ * only the balls, which overlap in x way, are checked (sweep and prune). The
+ * balls move only a little in one step, so the order from the previous step
+ * is almost sorted and it is fixed by the insertion sort in nearly linear
+ * time. The other ways of finding the pairs are there to be compared in the
+ * Benchmark.
+ *
+ * @author Adam
+ */
+class Collisions {
+
+    /**
+     * The ways of finding the pairs of balls, which may collide.
+     *
+     * @author Adam
+     */
+    enum BroadPhase {
+
+        BRUTE_FORCE, //every pair is checked
+        FULL_SORT, //the balls are sorted from scratch in every step
+        INCREMENTAL //the order from the previous step is only fixed
+    }
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("game.collisions", "true")); //do the balls collide?
+    private static final int RESORT = 8; //when one of this many balls is new, sort from scratch
+    private BroadPhase broadPhase; //the way of finding the pairs
+    private int[] order = new int[64]; //ids of the balls sorted by x
+    private float[] keys = new float[64]; //x coordinates of the sorted balls
+    private long[] packed = new long[64]; //x coordinates and ids for the full sort
+    private boolean[] sorted = new boolean[64]; //is the ball with this id in the order?
+    private int count = 0; //how many balls are in the order
+
+    /**
+     * Constructor with the incremental sort and prune.
+     *
+     * @author Adam
+     */
+    public Collisions() {
+        this(BroadPhase.INCREMENTAL);
+    }
+
+    /**
+     * Constructor with the given way of finding the pairs.
+     *
+     * @param broadPhase The way of finding the pairs.
+     * @author Adam
+     */
+    public Collisions(BroadPhase broadPhase) {
+        this.broadPhase = broadPhase;
+    }
+
+    /**
+     * Finds all colliding balls and bounces them off each other. The balls,
+     * which were pushed, are marked as moved. The caller has to hold the
+     * monitor of the store.
+     *
+     * @param data The data with the balls, or null when the pushed balls
+     * should not be marked.
+     * @param balls The store of the data.
+     * @author Adam
+     */
+    public void resolve(BallsData data, BallStore balls) {
+        switch (broadPhase) {
+            case BRUTE_FORCE:
+                for (int i = 0; i < balls.size(); i++) {
+                    for (int j = i + 1; j < balls.size(); j++) {
+                        collide(data, balls, i, j);
+                    }
+                }
+                return;
+            case FULL_SORT:
+                fullSort(balls);
+                break;
+            default:
+                if (update(balls)) {
+                    fullSort(balls);
+                } else {
+                    insertionSort(balls);
+                }
+        }
+        sweep(data, balls);
+    }
+
+    /**
+     * Takes the popped balls out of the order and appends the new ones at
+     * its end.
+     *
+     * @param balls The store with the balls.
+     * @return True, when so many balls are new, that the order should be
+     * sorted from scratch.
+     * @author Adam
+     */
+    private boolean update(BallStore balls) {
+        int kept = 0;
+        for (int k = 0; k < count; k++) {
+            int ballId = order[k];
+            if (balls.isAlive(ballId)) {
+                order[kept++] = ballId;
+            } else {
+                sorted[ballId] = false;
+            }
+        }
+        count = kept;
+        ensureCapacity(balls.size());
+        int added = 0;
+        for (int i = 0; i < balls.size(); i++) {
+            int ballId = balls.id[i];
+            if (ballId >= sorted.length) {
+                sorted = Arrays.copyOf(sorted, Math.max(ballId + 1, sorted.length * 2));
+            }
+            if (!sorted[ballId]) {
+                sorted[ballId] = true;
+                order[count++] = ballId;
+                added++;
+            }
+        }
+        return added > 0 && added * RESORT >= count;
+    }
+
+    /**
+     * Sorts the order by the insertion sort. It is fast, when the order is
+     * almost sorted.
+     *
+     * @param balls The store with the balls.
+     * @author Adam
+     */
+    private void insertionSort(BallStore balls) {
+        for (int k = 0; k < count; k++) {
+            keys[k] = balls.x[balls.indexOf(order[k])];
+        }
+        for (int k = 1; k < count; k++) {
+            float key = keys[k];
+            int ballId = order[k];
+            int j = k - 1;
+            while (j >= 0 && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                order[j + 1] = order[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            order[j + 1] = ballId;
+        }
+    }
+
+    /**
+     * Sorts all balls from scratch. The x coordinate and the id of each ball
+     * are packed to one number, so the primitive sort can be used.
+     *
+     * @param balls The store with the balls.
+     * @author Adam
+     */
+    private void fullSort(BallStore balls) {
+        for (int k = 0; k < count; k++) {
+            sorted[order[k]] = false;
+        }
+        count = balls.size();
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            //bits of non-negative floats are ordered as the floats
+            long bits = Float.floatToIntBits(Math.max(balls.x[i], 0f));
+            packed[i] = bits << 32 | balls.id[i];
+        }
+        Arrays.sort(packed, 0, count);
+        for (int k = 0; k < count; k++) {
+            order[k] = (int) packed[k];
+            keys[k] = balls.x[balls.indexOf(order[k])];
+            if (order[k] >= sorted.length) {
+                sorted = Arrays.copyOf(sorted, Math.max(order[k] + 1, sorted.length * 2));
+            }
+            sorted[order[k]] = true;
+        }
+    }
+
+    /**
+     * Goes through the sorted balls and checks each ball only with the next
+     * balls, which start before it ends in x way.
+     *
+     * @param data The data with the balls.
+     * @param balls The store with the balls.
+     * @author Adam
+     */
+    private void sweep(BallsData data, BallStore balls) {
+        for (int a = 0; a < count; a++) {
+            float end = keys[a] + Ball.R;
+            int i = balls.indexOf(order[a]);
+            for (int b = a + 1; b < count && keys[b] < end; b++) {
+                collide(data, balls, i, balls.indexOf(order[b]));
+            }
+        }
+    }
+
+    /**
+     * Checks if the two balls overlap and if they do, it pushes them apart
+     * and exchanges their velocities along the line between their centers.
+     *
+     * @param data The data with the balls.
+     * @param balls The store with the balls.
+     * @param i The index of the first ball.
+     * @param j The index of the second ball.
+     * @author Adam
+     */
+    static void collide(BallsData data, BallStore balls, int i, int j) {
+        float dx = balls.x[j] - balls.x[i];
+        float dy = balls.y[j] - balls.y[i];
+        float distance2 = dx * dx + dy * dy;
+        if (distance2 >= Ball.R * Ball.R) {
+            return;
+        }
+        float distance = (float) Math.sqrt(distance2);
+        float nx = 1;
+        float ny = 0;
+        if (distance > 0) {
+            nx = dx / distance;
+            ny = dy / distance;
+        }
+        //exchange the velocities, only when the balls approach each other
+        float approach = (balls.vx[i] - balls.vx[j]) * nx + (balls.vy[i] - balls.vy[j]) * ny;
+        if (approach > 0) {
+            balls.vx[i] -= approach * nx;
+            balls.vy[i] -= approach * ny;
+            balls.vx[j] += approach * nx;
+            balls.vy[j] += approach * ny;
+        }
+        //push both balls apart, so they do not overlap
+        float push = (Ball.R - distance) / 2;
+        push(data, balls, i, -push * nx, -push * ny);
+        push(data, balls, j, push * nx, push * ny);
+    }
+
+    /**
+     * Moves the ball by the given offset, keeps it inside the game
+     * environment and marks it as moved. The velocity is not turned at the
+     * bounds, the ball was only pushed.
+     *
+     * @author Adam
+     */
+    private static void push(BallsData data, BallStore balls, int i, float dx, float dy) {
+        float oldX = balls.x[i];
+        float oldY = balls.y[i];
+        balls.x[i] = Math.max(0, Math.min(balls.x[i] + dx, balls.getRightBound()));
+        balls.y[i] = Math.max(0, Math.min(balls.y[i] + dy, balls.getBottomBound()));
+        balls.moved(i);
+        if (data != null) {
+            data.markMoved(i, oldX, oldY);
+        }
+    }
+
+    /**
+     * Makes sure, that the arrays of the order are big enough.
+     *
+     * @param capacity The needed capacity.
+     * @author Adam
+     */
+    private void ensureCapacity(int capacity) {
+        if (order.length < capacity) {
+            int length = Math.max(capacity, order.length * 2);
+            order = Arrays.copyOf(order, length);
+            keys = Arrays.copyOf(keys, length);
+            packed = Arrays.copyOf(packed, length);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package game;
+
+import java.awt.Rectangle;
+
+/**
+ * The part of the game environment, which has to be repainted after a frame.
+ * It is kept as a few rectangles - every new rectangle is merged with the one
+ * it overlaps, or it is added as a new one. When there are too many of them,
+ * the new one is merged with the rectangle, which grows the least. When the
+ * rectangles cover most of the environment, the region becomes full and the
+ * whole environment should be repainted, because painting it at once is
+ * cheaper than painting many pieces.
+ *
+ * @author Adam
+ */
+public class DirtyRegion {
+
+    private static final int MAX_RECTS = 16; //maximum of kept rectangles
+    private static final double FULL_RATIO = 0.5; //when is the region considered full
+    private Rectangle[] rects; //the dirty rectangles
+    private int count = 0; //how many rectangles are used
+    private boolean full = false; //should everything be repainted?
+    private int width; //the width of the environment
+    private int height; //the height of the environment
+    private long area = 0; //the sum of areas of the rectangles
+
+    /**
+     * Constructor creates the empty region.
+     *
+     * @param width The width of the environment.
+     * @param height The height of the environment.
+     * @author Adam
+     */
+    public DirtyRegion(int width, int height) {
+        this.width = width;
+        this.height = height;
+        rects = new Rectangle[MAX_RECTS];
+        for (int k = 0; k < MAX_RECTS; k++) {
+            rects[k] = new Rectangle();
+        }
+    }
+
+    /**
+     * Tells, if the whole environment should be repainted.
+     *
+     * @return True, when the region is full.
+     * @author Adam
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    /**
+     * Tells, if there is nothing to repaint.
+     *
+     * @return True, when the region is empty.
+     * @author Adam
+     */
+    public boolean isEmpty() {
+        return !full && count == 0;
+    }
+
+    /**
+     * Returns the number of the dirty rectangles. It is not valid, when the
+     * region is full.
+     *
+     * @return The number of rectangles.
+     * @author Adam
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns one of the dirty rectangles. It must not be changed.
+     *
+     * @param k The order of the rectangle, from 0 to getCount()-1.
+     * @return The rectangle.
+     * @author Adam
+     */
+    public Rectangle get(int k) {
+        return rects[k];
+    }
+
+    /**
+     * Adds the box of the ball to the region.
+     *
+     * @param x X coordinate of the ball.
+     * @param y Y coordinate of the ball.
+     * @author Adam
+     */
+    public void addBall(float x, float y) {
+        addBall(x, y, x, y);
+    }
+
+    /**
+     * Adds the box covering the ball at the old and at the new position.
+     *
+     * @param oldX The old x coordinate of the ball.
+     * @param oldY The old y coordinate of the ball.
+     * @param x The new x coordinate of the ball.
+     * @param y The new y coordinate of the ball.
+     * @author Adam
+     */
+    public void addBall(float oldX, float oldY, float x, float y) {
+        //one pixel around, so the edges of the oval are covered
+        int left = (int) Math.min(oldX, x) - 1;
+        int top = (int) Math.min(oldY, y) - 1;
+        int right = (int) Math.max(oldX, x) + Ball.R + 2;
+        int bottom = (int) Math.max(oldY, y) + Ball.R + 2;
+        add(left, top, right - left, bottom - top);
+    }
+
+    /**
+     * Adds the rectangle to the region.
+     *
+     * @param x X coordinate of the rectangle.
+     * @param y Y coordinate of the rectangle.
+     * @param w The width of the rectangle.
+     * @param h The height of the rectangle.
+     * @author Adam
+     */
+    public void add(int x, int y, int w, int h) {
+        if (full) {
+            return;
+        }
+        int target = -1;
+        long growth = Long.MAX_VALUE;
+        for (int k = 0; k < count; k++) {
+            Rectangle r = rects[k];
+            if (r.intersects(x, y, w, h)) {
+                target = k;
+                break;
+            }
+            if (count == MAX_RECTS) {
+                long g = unionArea(r, x, y, w, h) - (long) r.width * r.height;
+                if (g < growth) {
+                    growth = g;
+                    target = k;
+                }
+            }
+        }
+        if (target < 0) {
+            rects[count++].setBounds(x, y, w, h);
+            area += (long) w * h;
+        } else {
+            Rectangle r = rects[target];
+            area -= (long) r.width * r.height;
+            int left = Math.min(r.x, x);
+            int top = Math.min(r.y, y);
+            int right = Math.max(r.x + r.width, x + w);
+            int bottom = Math.max(r.y + r.height, y + h);
+            r.setBounds(left, top, right - left, bottom - top);
+            area += (long) r.width * r.height;
+        }
+        if (area > FULL_RATIO * width * height) {
+            setFull();
+        }
+    }
+
+    /**
+     * Makes the region full, so everything will be repainted.
+     *
+     * @author Adam
+     */
+    public void setFull() {
+        full = true;
+        count = 0;
+        area = 0;
+    }
+
+    /**
+     * Adds all the rectangles of another region to this one.
+     *
+     * @param other The other region.
+     * @author Adam
+     */
+    public void addAll(DirtyRegion other) {
+        if (other.full) {
+            setFull();
+            return;
+        }
+        for (int k = 0; k < other.count; k++) {
+            Rectangle r = other.rects[k];
+            add(r.x, r.y, r.width, r.height);
+        }
+    }
+
+    /**
+     * Makes the region empty again.
+     *
+     * @author Adam
+     */
+    public void reset() {
+        full = false;
+        count = 0;
+        area = 0;
+    }
+
+    /**
+     * Computes the area of the bounding box of the rectangle and the given
+     * one.
+     *
+     * @author Adam
+     */
+    private static long unionArea(Rectangle r, int x, int y, int w, int h) {
+        long uw = Math.max(r.x + r.width, x + w) - Math.min(r.x, x);
+        long uh = Math.max(r.y + r.height, y + h) - Math.min(r.y, y);
+        return uw * uh;
+    }
+}
@@ -0,0 +1,150 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * The description of one data change, which is sent to the views. All the
+ * changes made during one frame of the simulation are collected into one
+ * FrameChange, so the views are informed only once per frame, no matter how
+ * many balls moved. Besides the ids of the changed balls it also keeps the
+ * region of the game environment, which the changes touched. The object is
+ * reused by BallsData for the next frames, so the views can read it only
+ * inside their dataChange() method. The changes of more frames can be
+ * merged into one (when a view did not take the previous frames yet), then
+ * every ball is in it only once and the regions are joined.
+ *
+ * @author Adam
+ */
+public class FrameChange {
+
+    private long frame; //number of the frame, in which the changes happened
+    private int[] changed = new int[64]; //ids of the changed balls
+    private int count = 0; //how many balls changed
+    private int[] seen = new int[64]; //the generation, in which each ball id was added
+    private int generation = 1; //generation of the current change
+    private int frames = 0; //how many frames were merged into this change
+    private DirtyRegion dirty; //the region, which has to be repainted
+
+    /**
+     * Constructor creates the empty change.
+     *
+     * @param width The width of the game environment.
+     * @param height The height of the game environment.
+     * @author Adam
+     */
+    public FrameChange(int width, int height) {
+        dirty = new DirtyRegion(width, height);
+    }
+
+    /**
+     * Returns the number of the simulation frame, after which the change was
+     * sent.
+     *
+     * @return The number of the frame.
+     * @author Adam
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns how many balls changed in the frame (moved, were created or
+     * popped).
+     *
+     * @return The number of changed balls.
+     * @author Adam
+     */
+    public int getChangedCount() {
+        return count;
+    }
+
+    /**
+     * Returns the id of one of the changed balls. The ball does not have to
+     * be alive, when it was popped during the frame.
+     *
+     * @param k The order of the changed ball, from 0 to getChangedCount()-1.
+     * @return The id of the ball.
+     * @author Adam
+     */
+    public int getChanged(int k) {
+        return changed[k];
+    }
+
+    /**
+     * Returns the number of the frames, whose changes are in this one.
+     *
+     * @return The number of merged frames, 1 for the single frame.
+     * @author Adam
+     */
+    public int getMergedFrames() {
+        return Math.max(1, frames);
+    }
+
+    /**
+     * Returns the region covering the old and the new positions of all
+     * changed balls.
+     *
+     * @return The dirty region.
+     * @author Adam
+     */
+    public DirtyRegion getDirty() {
+        return dirty;
+    }
+
+    /**
+     * Adds the ball to the changed balls.
+     *
+     * @param ballId The id of the ball.
+     * @author Adam
+     */
+    void add(int ballId) {
+        if (ballId >= seen.length) {
+            seen = Arrays.copyOf(seen, Math.max(ballId + 1, seen.length * 2));
+        }
+        if (seen[ballId] == generation) {
+            return;
+        }
+        seen[ballId] = generation;
+        if (count == changed.length) {
+            changed = Arrays.copyOf(changed, count * 2);
+        }
+        changed[count++] = ballId;
+    }
+
+    /**
+     * Adds all changes of the later frame to this change.
+     *
+     * @param other The changes of the later frame.
+     * @author Adam
+     */
+    void merge(FrameChange other) {
+        for (int k = 0; k < other.count; k++) {
+            add(other.changed[k]);
+        }
+        dirty.addAll(other.dirty);
+        frame = other.frame;
+        frames += other.getMergedFrames();
+    }
+
+    /**
+     * Sets the number of the frame, in which the changes happened.
+     *
+     * @param frame The number of the frame.
+     * @author Adam
+     */
+    void setFrame(long frame) {
+        this.frame = frame;
+    }
+
+    /**
+     * Forgets all changed balls, so the object can be used for the next frame.
+     *
+     * @author Adam
+     */
+    void reset() {
+        count = 0;
+        frames = 0;
+        generation++;
+        dirty.reset();
+    }
+}
@@ -0,0 +1,194 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * Copy of the balls of one finished frame, which is read by the painting
+ * without any lock. Only the things needed for painting are copied - the
+ * positions and the colors - into primitive arrays. The balls are copied
+ * cell by cell of the spatial grid, so the balls of one cell lie next to
+ * each other and the painting can find the balls of the painted cells
+ * without looking at the others. The arrays are reused, they grow only when
+ * there are more balls than ever before.
+ *
+ * @author Adam
+ */
+class FrameSnapshot {
+
+    private long frame = 0; //the number of the copied frame
+    private int count = 0; //number of the copied balls
+    private float[] x = new float[64]; //x coordinates of the balls
+    private float[] y = new float[64]; //y coordinates of the balls
+    private byte[] color = new byte[64]; //colors of the balls
+    private int columns; //number of cells in x way
+    private int rows; //number of cells in y way
+    private int[] cellStart; //index of the first ball of each cell, one more at the end
+
+    /**
+     * Constructor creates the empty snapshot of the game environment.
+     *
+     * @param width The width of the game environment.
+     * @param height The height of the game environment.
+     * @author Adam
+     */
+    public FrameSnapshot(int width, int height) {
+        columns = width / SpatialGrid.CELL + 1;
+        rows = height / SpatialGrid.CELL + 1;
+        cellStart = new int[columns * rows + 1];
+    }
+
+    /**
+     * Copies all balls from the store. The caller has to hold the monitor of
+     * the store.
+     *
+     * @param balls The store with the balls.
+     * @param frame The number of the frame.
+     * @author Adam
+     */
+    void copy(BallStore balls, long frame) {
+        this.frame = frame;
+        count = balls.size();
+        if (x.length < count) {
+            int capacity = Math.max(count, x.length * 2);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            color = Arrays.copyOf(color, capacity);
+        }
+        SpatialGrid grid = balls.getGrid();
+        int k = 0;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                cellStart[r * columns + c] = k;
+                for (int ballId = grid.first(c, r); ballId >= 0; ballId = grid.next(ballId)) {
+                    int i = balls.indexOf(ballId);
+                    x[k] = balls.x[i];
+                    y[k] = balls.y[i];
+                    color[k] = balls.color[i];
+                    k++;
+                }
+            }
+        }
+        cellStart[rows * columns] = k;
+    }
+
+    /**
+     * Returns the number of the copied frame.
+     *
+     * @return The number of the frame.
+     * @author Adam
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns the number of the copied balls.
+     *
+     * @return The number of balls.
+     * @author Adam
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the x coordinate of the ball.
+     *
+     * @param k The index of the ball in the snapshot.
+     * @return The x coordinate.
+     * @author Adam
+     */
+    public float getX(int k) {
+        return x[k];
+    }
+
+    /**
+     * Returns the y coordinate of the ball.
+     *
+     * @param k The index of the ball in the snapshot.
+     * @return The y coordinate.
+     * @author Adam
+     */
+    public float getY(int k) {
+        return y[k];
+    }
+
+    /**
+     * Returns the color number of the ball.
+     *
+     * @param k The index of the ball in the snapshot.
+     * @return The color number.
+     * @author Adam
+     */
+    public int getColor(int k) {
+        return color[k];
+    }
+
+    /**
+     * Computes the column of the cell containing the given x coordinate.
+     *
+     * @param px X coordinate.
+     * @return Column of the cell.
+     * @author Adam
+     */
+    public int column(float px) {
+        int c = (int) (px / SpatialGrid.CELL);
+        return c < 0 ? 0 : (c >= columns ? columns - 1 : c);
+    }
+
+    /**
+     * Computes the row of the cell containing the given y coordinate.
+     *
+     * @param py Y coordinate.
+     * @return Row of the cell.
+     * @author Adam
+     */
+    public int row(float py) {
+        int r = (int) (py / SpatialGrid.CELL);
+        return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+    }
+
+    /**
+     * Returns the number of cells in x way.
+     *
+     * @return The number of columns.
+     * @author Adam
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the number of cells in y way.
+     *
+     * @return The number of rows.
+     * @author Adam
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the index of the first ball of the cell.
+     *
+     * @param column Column of the cell.
+     * @param row Row of the cell.
+     * @return The index of the first ball.
+     * @author Adam
+     */
+    public int cellStart(int column, int row) {
+        return cellStart[row * columns + column];
+    }
+
+    /**
+     * Returns the index after the last ball of the cell.
+     *
+     * @param column Column of the cell.
+     * @param row Row of the cell.
+     * @return The index after the last ball.
+     * @author Adam
+     */
+    public int cellEnd(int column, int row) {
+        return cellStart[row * columns + column + 1];
+    }
+}
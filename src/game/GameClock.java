@@ -0,0 +1,189 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * The clock of the game time. It counts the time by System.nanoTime(), so
+ * it does not depend on the wall clock, and only while it runs, so the
+ * paused time is not counted. It runs its tasks (e.g. the tick of the
+ * BallHandler) every period of the game time, each task has its own period
+ * and the time of its first run, so the deadlines of the tasks do not meet.
+ * The times of a task are counted from the start of the game, not from its
+ * previous run, so a late run does not shift the next ones - when the
+ * thread, which polls the clock, was stalled, the missed runs are made at
+ * once, in the order of their deadlines, and the game is as long as it
+ * should be. The clock has no thread, it is polled by the simulation
+ * thread, which sleeps until the next run, when it is sooner than the next
+ * step, so the tasks run with the precision of the sleep, below a
+ * millisecond.
+ *
+ * @author Adam
+ */
+class GameClock {
+
+    private Runnable[] tasks = new Runnable[0]; //the tasks run every their period
+    private long[] periods = new long[0]; //the periods of the tasks in ns
+    private long[] firsts = new long[0]; //the game time of the first runs of the tasks, in ns
+    private long[] nexts = new long[0]; //the game time of the next runs of the tasks, in ns
+    private long elapsed = 0; //the game time counted before the last start, in ns
+    private long startedAt; //when was the clock started, in ns
+    private boolean running = false; //is the clock running?
+
+    /**
+     * Constructor of the stopped clock.
+     *
+     * @param task The task run every period.
+     * @param period The period of the task in ns.
+     * @author Adam
+     */
+    public GameClock(Runnable task, long period) {
+        schedule(task, period, period);
+    }
+
+    /**
+     * Adds the task, which is run every period from the given game time.
+     *
+     * @param task The task run every period.
+     * @param period The period of the task in ns.
+     * @param first The game time of the first run in ns.
+     * @author Adam
+     */
+    public synchronized void schedule(Runnable task, long period, long first) {
+        int n = tasks.length;
+        tasks = Arrays.copyOf(tasks, n + 1);
+        periods = Arrays.copyOf(periods, n + 1);
+        firsts = Arrays.copyOf(firsts, n + 1);
+        nexts = Arrays.copyOf(nexts, n + 1);
+        tasks[n] = task;
+        periods[n] = period;
+        firsts[n] = first;
+        nexts[n] = first;
+    }
+
+    /**
+     * Starts the clock, or lets it continue after the pause.
+     *
+     * @author Adam
+     */
+    public synchronized void start() {
+        if (!running) {
+            running = true;
+            startedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Pauses the clock, the time does not go on until it is started again.
+     *
+     * @author Adam
+     */
+    public synchronized void pause() {
+        if (running) {
+            elapsed += System.nanoTime() - startedAt;
+            running = false;
+        }
+    }
+
+    /**
+     * Sets the game time back to zero. The clock keeps running or stays
+     * paused.
+     *
+     * @author Adam
+     */
+    public synchronized void reset() {
+        elapsed = 0;
+        startedAt = System.nanoTime();
+        System.arraycopy(firsts, 0, nexts, 0, firsts.length);
+    }
+
+    /**
+     * Tells, if the clock is running.
+     *
+     * @return True, when it is started and not paused.
+     * @author Adam
+     */
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the game time.
+     *
+     * @param now The current time in ns.
+     * @return The time counted while the clock was running, in ns.
+     * @author Adam
+     */
+    public synchronized long getElapsed(long now) {
+        return running ? elapsed + now - startedAt : elapsed;
+    }
+
+    /**
+     * Returns how long it is until the next run of any task.
+     *
+     * @param now The current time in ns.
+     * @return The time in ns, Long.MAX_VALUE while the clock is paused.
+     * @author Adam
+     */
+    public synchronized long getUntilNext(long now) {
+        if (!running || nexts.length == 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, nexts[earliest()] - getElapsed(now));
+    }
+
+    /**
+     * Runs the tasks for every period, which has passed since the last poll.
+     * The tasks run outside the lock of the clock, so they can pause or
+     * reset it.
+     *
+     * @param now The current time in ns.
+     * @return How many times the tasks ran.
+     * @author Adam
+     */
+    public int poll(long now) {
+        int runs = 0;
+        Runnable task;
+        while ((task = due(now)) != null) {
+            task.run();
+            runs++;
+        }
+        return runs;
+    }
+
+    /**
+     * Returns the task with the earliest due run and moves it to its
+     * following one.
+     *
+     * @param now The current time in ns.
+     * @return The task, which should run now, or null.
+     * @author Adam
+     */
+    private synchronized Runnable due(long now) {
+        if (!running || nexts.length == 0) {
+            return null;
+        }
+        int k = earliest();
+        if (getElapsed(now) < nexts[k]) {
+            return null;
+        }
+        nexts[k] += periods[k];
+        return tasks[k];
+    }
+
+    /**
+     * Finds the task with the earliest next run, the first added one wins
+     * the same times.
+     *
+     * @return The index of the task.
+     * @author Adam
+     */
+    private int earliest() {
+        int best = 0;
+        for (int k = 1; k < nexts.length; k++) {
+            if (nexts[k] < nexts[best]) {
+                best = k;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,23 @@
+package game;
+
+/**
+ * The sizes of the game, which are needed also without any window - by the
+ * headless games, the sessions and the server. The arena can be bigger than
+ * the window, when the system property game.arena gives its size, then the
+ * window shows only its part (see Viewport).
+ *
+ * @author Adam
+ */
+final class GameConfig {
+
+    public static final int DIMENSION = 400; //dimension of the square environenment
+    public static final int ARENA = Math.max(DIMENSION, Integer.getInteger("game.arena", DIMENSION)); //dimension of the whole arena
+
+    /**
+     * Private constructor, there are only constants in this class.
+     *
+     * @author Adam
+     */
+    private GameConfig() {
+    }
+}
@@ -0,0 +1,36 @@
+package game;
+
+/**
+ * This interface represents a listener of the state of the game - the score
+ * and the time. The model does not know anything about the labels, it only
+ * informs the registered listeners, so the game can run also without any
+ * window (e.g. in the HeadlessGame).
+ *
+ * @author Adam
+ */
+public interface GameListener {
+
+    /**
+     * This method is called, when the score changes.
+     *
+     * @param score The new score.
+     * @author Adam
+     */
+    public void scoreChanged(int score);
+
+    /**
+     * This method is called, when the time left changes.
+     *
+     * @param timeleft The time left in ms.
+     * @author Adam
+     */
+    public void timeChanged(int timeleft);
+
+    /**
+     * This method is called, when the game ends.
+     *
+     * @param score The final score.
+     * @author Adam
+     */
+    public void gameEnded(int score);
+}
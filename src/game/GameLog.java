@@ -0,0 +1,451 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only log of the finished games. The records (see GameRecord) are
+ * kept in the data file and every game has a fixed-size entry in the index
+ * file - where its record is, its seed, when it ended and its score - so
+ * the games can be sorted and counted by reading only the index. Both files
+ * are memory-mapped by segments (4 MB of the data, 1 MB of the index), so
+ * the log can be much bigger than the heap and it is never read into it. A
+ * record never crosses the end of a segment, the rest of the segment is
+ * skipped, so the size of the data segments is kept in the header of the
+ * index. The writable segments are mapped whole, so the files grow by whole
+ * segments and their real end is known only from the index. The number of
+ * games in the header of the index is written after the record and the
+ * entry, so a game, which was not written completely, is not in the log.
+ *
+ * The game never waits for the disk - the finished record is only offered
+ * to a small queue and the own writer thread writes it to the mapped
+ * files. When the queue is full, the record is dropped and counted. The log
+ * used by the game is opened, when the system property game.log names the
+ * files (without the extensions .dat and .idx). The writable log is read
+ * only by its writer, the Leaderboard opens the log only for reading.
+ *
+ * @author Adam
+ */
+class GameLog implements Runnable {
+
+    private static final int MAGIC = 0x48544c47; //"HTLG" at the beginning of both files
+    private static final int VERSION = 1; //version of the format
+    private static final long DATA_SEGMENT = 1L << 22; //size of one mapped part of the new data files
+    private static final long INDEX_SEGMENT = 1L << 20; //size of one mapped part of the index
+    private static final int HEADER = 32; //size of the header of the files
+    private static final int ENTRY = 32; //size of one entry of the index
+    private static final int QUEUE = 64; //how many records can wait for the writer
+    private static final String FILE = System.getProperty("game.log"); //files of the shared log, or null
+    private static GameLog shared; //the log of the game, opened when needed
+    private FileChannel data; //the file with the records
+    private FileChannel index; //the file with the entries
+    private ArrayList<MappedByteBuffer> dataSegments = new ArrayList<>(); //mapped parts of the data
+    private ArrayList<MappedByteBuffer> indexSegments = new ArrayList<>(); //mapped parts of the index
+    private boolean writable; //can the log be written?
+    private long dataSegment = DATA_SEGMENT; //size of one mapped part of the data file
+    private volatile long count; //number of the games in the log
+    private long end; //where the next record will be written
+    private ArrayBlockingQueue<GameRecord> queue = new ArrayBlockingQueue<>(QUEUE); //records waiting for the writer
+    private AtomicLong dropped = new AtomicLong(); //how many records were dropped
+    private ByteBuffer scratch = ByteBuffer.allocate(4096); //the record is encoded here first
+    private Thread writer; //the writer thread, null when the log is only read
+    private volatile boolean closing = false; //should the writer end?
+
+    /**
+     * Constructor opens the log. The writable log is created, when it does
+     * not exist, and its writer thread is started.
+     *
+     * @param name The name of the files without the extensions.
+     * @param writable Should the games be written to the log?
+     * @throws IOException When the files can not be opened, or they are
+     * not a game log.
+     * @author Adam
+     */
+    public GameLog(String name, boolean writable) throws IOException {
+        this.writable = writable;
+        if (writable) {
+            data = FileChannel.open(Paths.get(name + ".dat"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index = FileChannel.open(Paths.get(name + ".idx"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } else {
+            data = FileChannel.open(Paths.get(name + ".dat"), StandardOpenOption.READ);
+            index = FileChannel.open(Paths.get(name + ".idx"), StandardOpenOption.READ);
+        }
+        if (index.size() == 0 && writable) {
+            writeHeader(segment(data, dataSegments, dataSegment, 0));
+            writeHeader(segment(index, indexSegments, INDEX_SEGMENT, 0));
+            segment(index, indexSegments, INDEX_SEGMENT, 0).putLong(16, dataSegment);
+        }
+        if (index.size() < HEADER || data.size() < HEADER) {
+            throw new IOException(name + " is not a game log");
+        }
+        ByteBuffer header = segment(index, indexSegments, INDEX_SEGMENT, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException(name + " is not a game log of this version of the game");
+        }
+        dataSegment = header.getLong(16);
+        if (dataSegment <= 0 || segment(data, dataSegments, dataSegment, 0).getInt(0) != MAGIC) {
+            throw new IOException(name + " is not a game log of this version of the game");
+        }
+        count = header.getLong(8);
+        end = HEADER;
+        if (count > 0) {
+            end = getOffset(count - 1) + 4 + getLength(count - 1);
+        }
+        if (writable) {
+            writer = Threads.factory(false, "GameLog").newThread(this);
+            writer.start();
+        }
+    }
+
+    /**
+     * Returns the log of the game named by the system property game.log. It
+     * is opened, when it is needed for the first time.
+     *
+     * @return The log, or null when it is not set or it can not be opened.
+     * @author Adam
+     */
+    public static synchronized GameLog getShared() {
+        if (shared == null && FILE != null) {
+            try {
+                shared = new GameLog(FILE, true);
+                //the waiting records are written before the game ends
+                Runtime.getRuntime().addShutdownHook(new Thread(new Closer(shared)));
+            } catch (IOException ex) {
+                System.out.println("Game log could not be opened: " + ex.getMessage());
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Offers the finished game to the writer. It never waits, when the
+     * queue is full, the game is dropped.
+     *
+     * @param record The finished game.
+     * @return False, when the game was dropped.
+     * @author Adam
+     */
+    public boolean offer(GameRecord record) {
+        if (closing || !queue.offer(record)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of the dropped games.
+     *
+     * @return The number of games.
+     * @author Adam
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of the games in the log.
+     *
+     * @return The number of games.
+     * @author Adam
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns where the record of the game is in the data file.
+     *
+     * @param game The order of the game in the log.
+     * @return The position of the record.
+     * @author Adam
+     */
+    public long getOffset(long game) {
+        return entry(game).getLong(entryPosition(game));
+    }
+
+    /**
+     * Returns the seed of the game.
+     *
+     * @param game The order of the game in the log.
+     * @return The seed.
+     * @author Adam
+     */
+    public long getSeed(long game) {
+        return entry(game).getLong(entryPosition(game) + 8);
+    }
+
+    /**
+     * Returns when the game ended.
+     *
+     * @param game The order of the game in the log.
+     * @return The time in ms since 1970.
+     * @author Adam
+     */
+    public long getTime(long game) {
+        return entry(game).getLong(entryPosition(game) + 16);
+    }
+
+    /**
+     * Returns the final score of the game.
+     *
+     * @param game The order of the game in the log.
+     * @return The score.
+     * @author Adam
+     */
+    public int getScore(long game) {
+        return entry(game).getInt(entryPosition(game) + 24);
+    }
+
+    /**
+     * Returns the record of the game, it can be read as described in the
+     * GameRecord.
+     *
+     * @param game The order of the game in the log.
+     * @return The buffer with the record, it is a view of the mapped file.
+     * @throws IOException When the file can not be mapped.
+     * @author Adam
+     */
+    public ByteBuffer getRecord(long game) throws IOException {
+        long offset = getOffset(game);
+        ByteBuffer record = segment(data, dataSegments, dataSegment, offset).duplicate();
+        int position = (int) (offset % dataSegment) + 4;
+        record.position(position);
+        record.limit(position + getLength(game));
+        return record;
+    }
+
+    /**
+     * Writes the waiting records until the log is closed.
+     *
+     * @author Adam
+     */
+    @Override
+    public void run() {
+        boolean written = false;
+        while (!closing || !queue.isEmpty()) {
+            try {
+                GameRecord record = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (record != null) {
+                    write(record);
+                    written = true;
+                }
+                if (written && queue.isEmpty()) {
+                    force();
+                    written = false;
+                }
+            } catch (IOException ex) {
+                System.out.println("Game could not be written to the log: " + ex.getMessage());
+            } catch (InterruptedException ex) {
+                //nobody interrupts the writer (it could close the files),
+                //it ends only by closing
+            }
+        }
+    }
+
+    /**
+     * Writes all waiting records to the disk and closes the files. The files
+     * keep the size of their mapped segments - they are not cut, while the
+     * segments may still be mapped.
+     *
+     * @author Adam
+     */
+    public void close() {
+        closing = true;
+        if (writer != null) {
+            try {
+                writer.join(Simulation.SHUTDOWN_TIMEOUT);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (writable && !writer.isAlive()) {
+                force();
+            }
+            data.close();
+            index.close();
+        } catch (IOException ex) {
+            System.out.println("Game log could not be closed: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Writes the record and its entry to the mapped files. The number of the
+     * games is increased at last, so the game is in the log only when
+     * everything is written. Only the writer thread calls it.
+     *
+     * @param record The finished game.
+     * @throws IOException When the files can not be mapped.
+     * @author Adam
+     */
+    private void write(GameRecord record) throws IOException {
+        int size = record.getMaxSize();
+        if (scratch.capacity() < size) {
+            scratch = ByteBuffer.allocate(Math.max(size, scratch.capacity() * 2));
+        }
+        scratch.clear();
+        record.encode(scratch);
+        scratch.flip();
+        int length = scratch.remaining();
+        if (4 + length > dataSegment) {
+            throw new IOException("the record of " + length + " bytes is bigger than a segment");
+        }
+        if (end % dataSegment + 4 + length > dataSegment) {
+            //the record does not fit to the rest of the segment
+            end = (end / dataSegment + 1) * dataSegment;
+        }
+        ByteBuffer segment = segment(data, dataSegments, dataSegment, end);
+        segment.position((int) (end % dataSegment));
+        segment.putInt(length);
+        segment.put(scratch);
+        ByteBuffer entry = segment(index, indexSegments, INDEX_SEGMENT, HEADER + count * ENTRY);
+        entry.position(entryPosition(count));
+        entry.putLong(end);
+        entry.putLong(record.getSeed());
+        entry.putLong(record.getTime());
+        entry.putInt(record.getScore());
+        entry.putInt(length);
+        end += 4 + length;
+        segment(index, indexSegments, INDEX_SEGMENT, 0).putLong(8, count + 1);
+        count++;
+    }
+
+    /**
+     * Writes the mapped parts of the files to the disk. The index is written
+     * after the data, so it never points to the records, which are not on
+     * the disk.
+     *
+     * @author Adam
+     */
+    private void force() {
+        for (MappedByteBuffer segment : dataSegments) {
+            if (segment != null) {
+                segment.force();
+            }
+        }
+        for (MappedByteBuffer segment : indexSegments) {
+            if (segment != null) {
+                segment.force();
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the record of the game.
+     *
+     * @param game The order of the game in the log.
+     * @return The length in bytes.
+     * @author Adam
+     */
+    private int getLength(long game) {
+        return entry(game).getInt(entryPosition(game) + 28);
+    }
+
+    /**
+     * Returns the mapped segment of the index with the entry of the game.
+     *
+     * @param game The order of the game in the log.
+     * @return The segment.
+     * @author Adam
+     */
+    private ByteBuffer entry(long game) {
+        try {
+            return segment(index, indexSegments, INDEX_SEGMENT, HEADER + game * ENTRY);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Index could not be mapped", ex);
+        }
+    }
+
+    /**
+     * Returns the position of the entry of the game in its segment.
+     *
+     * @param game The order of the game in the log.
+     * @return The position in the segment.
+     * @author Adam
+     */
+    private static int entryPosition(long game) {
+        return (int) ((HEADER + game * ENTRY) % INDEX_SEGMENT);
+    }
+
+    /**
+     * Returns the mapped segment of the file, which contains the position.
+     * The writable segments are mapped whole (the file grows), the read
+     * ones only as far as the file is.
+     *
+     * @param file The file.
+     * @param segments The mapped segments of the file.
+     * @param size The size of the segments of the file.
+     * @param position The position in the file.
+     * @return The segment.
+     * @throws IOException When the file can not be mapped.
+     * @author Adam
+     */
+    private MappedByteBuffer segment(FileChannel file, ArrayList<MappedByteBuffer> segments, long size, long position) throws IOException {
+        int k = (int) (position / size);
+        while (segments.size() <= k) {
+            segments.add(null);
+        }
+        MappedByteBuffer segment = segments.get(k);
+        if (segment == null) {
+            long start = k * size;
+            if (writable) {
+                segment = file.map(FileChannel.MapMode.READ_WRITE, start, size);
+            } else {
+                segment = file.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size, file.size() - start));
+            }
+            segments.set(k, segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Writes the header of the new file.
+     *
+     * @param header The first segment of the file.
+     * @author Adam
+     */
+    private static void writeHeader(ByteBuffer header) {
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putLong(8, 0);
+    }
+
+    /**
+     * Inner class, which closes the log, when the program ends.
+     *
+     * @author Adam
+     */
+    static class Closer implements Runnable {
+
+        private GameLog log; //the closed log
+
+        /**
+         * Constructor of the closer.
+         *
+         * @param log The closed log.
+         * @author Adam
+         */
+        Closer(GameLog log) {
+            this.log = log;
+        }
+
+        /**
+         * Closes the log.
+         *
+         * @author Adam
+         */
+        @Override
+        public void run() {
+            log.close();
+        }
+    }
+}
@@ -3,21 +3,30 @@ package game;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.*;
 
 /**
  * Main panel of the application - info labels, main game environment and
- * control buttons. Singleton!
+ * control buttons. Singleton! It listens to the score and the time of the
+ * game and shows them in the labels. The changes come from the other
+ * threads, so only the newest values are remembered and one update on the
+ * EDT shows both of them.
  *
  * @author Adam
  */
-class GamePanel extends JPanel {
+class GamePanel extends JPanel implements GameListener {
 
-    private BallsPanel bp; //main game environment
+    private BPInterface bp; //main game environment
     private JLabel score; //text label with score
     private JLabel timeleft; //text label with time left
     private JLabel info; //information text label
     private static GamePanel instance; //instance of this singleton class
+    private volatile int shownScore; //the score, which should be shown
+    private volatile int shownTime = 60000; //the time left, which should be shown, in ms
+    private volatile String shownInfo; //the information, which should be shown, or null
+    private AtomicBoolean labelsScheduled = new AtomicBoolean(); //are the labels already being updated?
+    private Runnable labelsUpdater = new LabelsUpdater(); //updates the labels on the EDT
 
     /**
      * Constructor is private, so only one instance will exist - singleton
@@ -26,14 +35,18 @@ class GamePanel extends JPanel {
      * @author Adam
      */
     private GamePanel() {
-        //create the components of the game
-        bp = new BallsPanel();
+        //create the components of the game, painted actively or by Swing
+        if (ArenaCanvas.ACTIVE) {
+            bp = new ArenaCanvas();
+        } else {
+            bp = new BallsPanel();
+        }
         /* 
          * main game environment is in the GridBagLayout, so it will
          * be always the same size and always in the middle
          */
         JPanel outer = new JPanel(new GridBagLayout());
-        outer.add(bp);
+        outer.add((Component) bp);
 
         //buttons creation
         JPanel buttonpanel = new JPanel(new FlowLayout());
@@ -71,14 +84,18 @@ class GamePanel extends JPanel {
     }
 
     /**
-     * The instance of the class is received by this static method.
+     * The instance of the class is received by this static method. Any
+     * thread can call it, the instance is made only once.
      *
      * @author Adam
      * @return The instance of the singleton class.
      */
-    public static GamePanel getInstance() {
+    public static synchronized GamePanel getInstance() {
         if (instance == null) {
             instance = new GamePanel();
+            BallsData.getInstance().listen(instance);
+            //the clip is loaded by the audio thread, not here on the EDT
+            BallsData.getInstance().setSound(PopSound.start());
         }
         return instance;
     }
@@ -113,6 +130,83 @@ class GamePanel extends JPanel {
         return info;
     }
 
+    /**
+     * Shows the new score in the score label. The score comes at most once
+     * per frame from the simulation thread, so the label is updated later on
+     * the EDT, only once for many quick changes.
+     *
+     * @param score The new score.
+     * @author Adam
+     */
+    @Override
+    public void scoreChanged(int score) {
+        shownScore = score;
+        scheduleLabels();
+    }
+
+    /**
+     * Shows the time left in the time label, later on the EDT.
+     *
+     * @param timeleft The time left in ms.
+     * @author Adam
+     */
+    @Override
+    public void timeChanged(int timeleft) {
+        shownTime = timeleft;
+        scheduleLabels();
+    }
+
+    /**
+     * Schedules the update of the labels on the EDT, when it is not
+     * scheduled yet.
+     *
+     * @author Adam
+     */
+    private void scheduleLabels() {
+        if (!labelsScheduled.getAndSet(true)) {
+            SwingUtilities.invokeLater(labelsUpdater);
+        }
+    }
+
+    /**
+     * Shows the information of the ended game, later on the EDT.
+     *
+     * @param score The final score.
+     * @author Adam
+     */
+    @Override
+    public void gameEnded(int score) {
+        shownInfo = "You hit " + score + " balls!";
+        scheduleLabels();
+    }
+
+    /**
+     * Inner class, which shows the last score, time and information in the
+     * labels.
+     *
+     * @author Adam
+     */
+    class LabelsUpdater implements Runnable {
+
+        /**
+         * Shows the score, the time and the information of the ended game,
+         * the next change will be scheduled again.
+         *
+         * @author Adam
+         */
+        @Override
+        public void run() {
+            labelsScheduled.set(false);
+            score.setText(shownScore + " balls hit");
+            timeleft.setText(shownTime / 1000 + " seconds");
+            String text = shownInfo;
+            if (text != null) {
+                shownInfo = null;
+                info.setText(text);
+            }
+        }
+    }
+
     /**
      * Inner class, which serves as the Action listener for pause button.
      *
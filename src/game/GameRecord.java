@@ -0,0 +1,173 @@
+package game;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The record of one finished game for the GameLog - the seed of the
+ * handler, the number of the game played with it, when the game ended, the
+ * final score, how many frames it took, all clicks (in the frame, in which
+ * they were resolved) and the statistics of every tick (how many balls
+ * there were and the score). The clicks come from the simulation and the
+ * ticks from the clock, so the functions are synchronized. After the game is
+ * finished, nothing more is added, so the late click of the next game can
+ * not change the record, which is being written.
+ *
+ * The record is written by seven bits as the Recording: the game, the seed,
+ * the time, the score, the frames, the number of the clicks and the clicks
+ * (the frame relative to the previous click and the coordinates), then the
+ * number of the ticks and the balls and the score of every tick.
+ *
+ * @author Adam
+ */
+class GameRecord {
+
+    private static final int MAX_CLICKS = 65536; //more clicks are not recorded
+    private long seed; //the seed of the handler
+    private int game; //the number of the game played with the seed
+    private long startFrame; //the frame, in which the game started
+    private long time; //when did the game end, in ms since 1970
+    private int score; //the final score
+    private int frames; //how many frames the game took
+    private int clickCount = 0; //number of the clicks
+    private int[] clicks = new int[3 * 64]; //the frame, x and y of every click
+    private int tickCount = 0; //number of the ticks
+    private int[] ticks = new int[2 * 64]; //the balls and the score of every tick
+    private boolean finished = false; //has the game ended?
+
+    /**
+     * Constructor creates the record of the started game.
+     *
+     * @param seed The seed of the handler.
+     * @param game The number of the game played with the seed.
+     * @param startFrame The frame, in which the game started.
+     * @author Adam
+     */
+    public GameRecord(long seed, int game, long startFrame) {
+        this.seed = seed;
+        this.game = game;
+        this.startFrame = startFrame;
+    }
+
+    /**
+     * Adds the click, which was resolved after the given frame.
+     *
+     * @param frame The number of the frame.
+     * @param x X coordinate of the click.
+     * @param y Y coordinate of the click.
+     * @author Adam
+     */
+    public synchronized void addClick(long frame, int x, int y) {
+        if (finished || clickCount == MAX_CLICKS) {
+            return;
+        }
+        if (3 * clickCount == clicks.length) {
+            clicks = Arrays.copyOf(clicks, clicks.length * 2);
+        }
+        clicks[3 * clickCount] = (int) Math.max(0, frame - startFrame);
+        clicks[3 * clickCount + 1] = x;
+        clicks[3 * clickCount + 2] = y;
+        clickCount++;
+    }
+
+    /**
+     * Adds the statistics of one tick.
+     *
+     * @param balls How many balls there are.
+     * @param score The score so far.
+     * @author Adam
+     */
+    public synchronized void addTick(int balls, int score) {
+        if (finished) {
+            return;
+        }
+        if (2 * tickCount == ticks.length) {
+            ticks = Arrays.copyOf(ticks, ticks.length * 2);
+        }
+        ticks[2 * tickCount] = balls;
+        ticks[2 * tickCount + 1] = score;
+        tickCount++;
+    }
+
+    /**
+     * Finishes the record, nothing is added to it any more.
+     *
+     * @param frame The frame, in which the game ended.
+     * @param score The final score.
+     * @author Adam
+     */
+    public synchronized void finish(long frame, int score) {
+        finished = true;
+        this.frames = (int) Math.max(0, frame - startFrame);
+        this.score = score;
+        time = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the seed of the handler.
+     *
+     * @return The seed.
+     * @author Adam
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns when the game ended.
+     *
+     * @return The time in ms since 1970.
+     * @author Adam
+     */
+    public synchronized long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the final score.
+     *
+     * @return The score.
+     * @author Adam
+     */
+    public synchronized int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the most bytes, which the encoded record can take.
+     *
+     * @return The number of bytes.
+     * @author Adam
+     */
+    public synchronized int getMaxSize() {
+        return 64 + clickCount * 15 + tickCount * 10;
+    }
+
+    /**
+     * Writes the record to the buffer, which has at least getMaxSize()
+     * bytes left.
+     *
+     * @param out The buffer.
+     * @author Adam
+     */
+    public synchronized void encode(ByteBuffer out) {
+        Protocol.putNumber(out, game);
+        out.putLong(seed);
+        out.putLong(time);
+        Protocol.putNumber(out, score);
+        Protocol.putNumber(out, frames);
+        Protocol.putNumber(out, clickCount);
+        int previous = 0;
+        for (int k = 0; k < clickCount; k++) {
+            Protocol.putNumber(out, clicks[3 * k] - previous);
+            previous = clicks[3 * k];
+            Protocol.putSigned(out, clicks[3 * k + 1]);
+            Protocol.putSigned(out, clicks[3 * k + 2]);
+        }
+        Protocol.putNumber(out, tickCount);
+        for (int k = 0; k < tickCount; k++) {
+            Protocol.putNumber(out, ticks[2 * k]);
+            Protocol.putNumber(out, ticks[2 * k + 1]);
+        }
+    }
+}
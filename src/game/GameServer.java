@@ -0,0 +1,522 @@
+package game;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Main class of the server, where more players hit the same balls. The
+ * server is the only one, who moves and pops the balls - the clients only
+ * show what they get and send their clicks. Everything runs in one thread:
+ * the selector waits for the clients only until the next step of the
+ * simulation is due, then the game is stepped (as in the HeadlessGame, but
+ * in the real time) and the changes of the frame are sent to all clients.
+ * Every frame is encoded only once by the StateEncoder and the same bytes
+ * are queued for all clients, so one more client costs only its writes. The
+ * sockets are not blocking, what a client does not take is kept in its
+ * queue and written, when the socket can take it again. A client, which is
+ * too slow, loses its queue and gets the keyframe again, so it never holds
+ * the others back. The clicks of the clients are queued in the BallsData, so
+ * the balls are popped at the beginning of the next step, as in the window.
+ *
+ * @author Adam
+ */
+public class GameServer implements View, GameListener, Runnable {
+
+    public static final int PORT = 4747; //the default port
+    private static final int INTERVAL = 1000; //how often does the handler tick in ms
+    private static final int TICK_FRAMES = INTERVAL / Simulation.STEP; //frames between two ticks
+    private static final int SPAWN_FRAMES = TICK_FRAMES / BallHandler.SPAWNS; //frames between two spawns of the extra balls
+    private static final int MAX_CATCHUP = 5; //the most steps made at once, when the server is late
+    private static final int MAX_QUEUED = 50; //how many messages can wait for a client, before it is resynchronized
+    private static final int SENT_FRAMES = 256; //how many times of the sent frames are kept
+    private static final int BACKLOG = 1024; //how many clients can wait for accepting
+    private ServerSocketChannel server; //the listening socket
+    private Selector selector; //the selector of all sockets
+    private BallHandler handler; //handler, which creates new balls
+    private Simulation simulation; //the simulation, which moves the balls
+    private StateEncoder encoder = new StateEncoder(); //encoder of the frames
+    private ArrayList<Client> clients = new ArrayList<>(); //the connected clients
+    private Client[] queued = new Client[0]; //copy of the clients, see dataChange
+    private AtomicLongArray sent = new AtomicLongArray(SENT_FRAMES); //when were the last frames sent, by the frame
+    private volatile boolean stopping = false; //should the server end?
+    private volatile boolean paused = false; //should the game stop, while the clients are still served?
+    private volatile long frames = 0; //number of played frames
+    private volatile int connected = 0; //number of connected clients
+    private volatile long resyncs = 0; //how many times a slow client got the keyframe again
+    private boolean cleared = true; //was the game cleared, so all clients need the keyframe?
+    private boolean waiting = false; //is there a client, which needs the keyframe?
+    private int timeleft = 0; //the time left in ms
+    private int games = 0; //number of finished games
+
+    /**
+     * Constructor opens the listening socket and prepares the game. The
+     * balls from the previous games are removed.
+     *
+     * @param port The port, 0 for any free port.
+     * @throws IOException When the socket can not be opened.
+     * @author Adam
+     */
+    public GameServer(int port) throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), BACKLOG);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        BallsData.getInstance().clear();
+        handler = new BallHandler(INTERVAL, GameConfig.ARENA);
+        simulation = handler.getSimulation();
+        BallsData.getInstance().register(this, true);
+        BallsData.getInstance().listen(this);
+    }
+
+    /**
+     * Returns the port, where the server listens.
+     *
+     * @return The port.
+     * @author Adam
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Returns the number of played frames.
+     *
+     * @return The number of frames.
+     * @author Adam
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns the number of connected clients.
+     *
+     * @return The number of clients.
+     * @author Adam
+     */
+    public int getClientCount() {
+        return connected;
+    }
+
+    /**
+     * Returns how many times a client was too slow and got the keyframe
+     * again.
+     *
+     * @return The number of resynchronizations.
+     * @author Adam
+     */
+    public long getResyncs() {
+        return resyncs;
+    }
+
+    /**
+     * Returns the time, when the server started to send the frame to the
+     * clients. Only the last few frames are kept.
+     *
+     * @param frame The number of the frame (as sent to the clients).
+     * @return The time in ns.
+     * @author Adam
+     */
+    public long getSentTime(int frame) {
+        return sent.get(frame % SENT_FRAMES);
+    }
+
+    /**
+     * Stops or continues the game. The clients are still served, so they
+     * can get all sent frames.
+     *
+     * @param pause Should the game stop?
+     * @author Adam
+     */
+    public void pause(boolean pause) {
+        paused = pause;
+        selector.wakeup();
+    }
+
+    /**
+     * Asks the server to end. The thread of the server closes all sockets.
+     *
+     * @author Adam
+     */
+    public void shutdown() {
+        stopping = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Main loop of the server. It serves the clients until the next step is
+     * due, then it steps the game. When it is late, it makes at most a few
+     * steps at once and drops the rest, as the Simulation does.
+     *
+     * @author Adam
+     */
+    @Override
+    public void run() {
+        long next = System.nanoTime();
+        try {
+            while (!stopping) {
+                long now = System.nanoTime();
+                if (paused) {
+                    next = now;
+                } else {
+                    int steps = 0;
+                    while (now - next >= 0 && steps < MAX_CATCHUP) {
+                        frame();
+                        next += Simulation.STEP_NANOS;
+                        steps++;
+                    }
+                    if (now - next >= 0) {
+                        next = now + Simulation.STEP_NANOS;
+                    }
+                }
+                //rounded up, so the loop does not spin before the step
+                long wait = (next - System.nanoTime() + 999999L) / 1000000L;
+                if (paused) {
+                    selector.select();
+                } else if (wait > 0) {
+                    selector.select(wait);
+                } else {
+                    selector.selectNow();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    serve(key);
+                }
+            }
+        } catch (IOException ex) {
+            System.out.println("Server failed: " + ex.getMessage());
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Plays one frame - the balls move, the handler creates the ordered extra
+     * balls and once per interval it ticks. The frame is sent to the clients
+     * by dataChange().
+     *
+     * @author Adam
+     */
+    private void frame() {
+        simulation.step();
+        frames++;
+        if (frames % SPAWN_FRAMES == SPAWN_FRAMES / 2) {
+            handler.spawn();
+        }
+        if (frames % TICK_FRAMES == 0) {
+            handler.tick();
+        }
+        simulation.finishFrame();
+    }
+
+    /**
+     * Serves the socket, which is ready.
+     *
+     * @param key The key of the socket.
+     * @author Adam
+     */
+    private void serve(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Client client = (Client) key.attachment();
+        try {
+            if (key.isReadable()) {
+                client.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                client.flush();
+            }
+        } catch (IOException ex) {
+            drop(client);
+        }
+    }
+
+    /**
+     * Accepts all waiting clients. They get the keyframe after the next
+     * frame.
+     *
+     * @author Adam
+     */
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = server.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                Client client = new Client(channel);
+                client.key = channel.register(selector, SelectionKey.OP_READ, client);
+                clients.add(client);
+                connected = clients.size();
+                waiting = true;
+            }
+        } catch (IOException ex) {
+            System.out.println("Client could not be accepted: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Closes the connection of the client.
+     *
+     * @param client The client.
+     * @author Adam
+     */
+    private void drop(Client client) {
+        client.key.cancel();
+        try {
+            client.channel.close();
+        } catch (IOException ex) {
+            //the client is gone anyway
+        }
+        clients.remove(client);
+        connected = clients.size();
+    }
+
+    /**
+     * Closes all sockets.
+     *
+     * @author Adam
+     */
+    private void close() {
+        while (!clients.isEmpty()) {
+            drop(clients.get(clients.size() - 1));
+        }
+        try {
+            server.close();
+            selector.close();
+        } catch (IOException ex) {
+            System.out.println("Server could not be closed: " + ex.getMessage());
+        }
+        BallsData.getInstance().forget(this);
+        BallsData.getInstance().unregister(this);
+    }
+
+    /**
+     * Encodes the changes of the frame and queues them for all clients. The
+     * clients, which do not know the game yet (the new ones and the slow
+     * ones), get the keyframe instead. After the game was cleared, all
+     * clients get the keyframe. It is called by the thread of the server,
+     * when it finishes the frame.
+     *
+     * @param change All the changes made during the frame.
+     * @author Adam
+     */
+    @Override
+    public void dataChange(FrameChange change) {
+        long start = System.nanoTime();
+        sent.set((int) (change.getFrame() & Integer.MAX_VALUE) % SENT_FRAMES, start);
+        BallsData data = BallsData.getInstance();
+        BallStore balls = data.getData();
+        ByteBuffer delta = null;
+        synchronized (balls) {
+            if (cleared) {
+                encoder.rebuild(balls);
+            } else {
+                delta = encoder.delta(balls, change, data.getScore(), timeleft);
+            }
+        }
+        ByteBuffer keyframe = null;
+        if (cleared || waiting) {
+            keyframe = encoder.keyframe(change.getFrame(), GameConfig.ARENA, data.getScore(), timeleft);
+        }
+        cleared = false;
+        waiting = false;
+        //the clients may be dropped while sending, so they are copied first
+        queued = clients.toArray(queued);
+        int count = clients.size();
+        for (int k = 0; k < count; k++) {
+            Client client = queued[k];
+            if (!client.synced || delta == null) {
+                client.synced = true;
+                client.send(keyframe);
+            } else {
+                client.send(delta);
+            }
+        }
+        Metrics.SEND.record(System.nanoTime() - start);
+    }
+
+    /**
+     * The score is sent with every frame.
+     *
+     * @param score The new score.
+     * @author Adam
+     */
+    @Override
+    public void scoreChanged(int score) {
+    }
+
+    /**
+     * Remembers the time left, it is sent with the next frame.
+     *
+     * @param timeleft The time left in ms.
+     * @author Adam
+     */
+    @Override
+    public void timeChanged(int timeleft) {
+        this.timeleft = timeleft;
+    }
+
+    /**
+     * Prints the score of the finished game. The game is cleared right
+     * after, so all clients get the new keyframe.
+     *
+     * @param score The final score.
+     * @author Adam
+     */
+    @Override
+    public void gameEnded(int score) {
+        games++;
+        cleared = true;
+        System.out.println("Game " + games + ": " + connected + " players hit " + score + " balls");
+    }
+
+    /**
+     * Inner class with the connection of one client - its socket, the
+     * messages waiting for it and the started click.
+     *
+     * @author Adam
+     */
+    class Client {
+
+        private SocketChannel channel; //the socket of the client
+        private SelectionKey key; //the key of the socket in the selector
+        private ArrayDeque<ByteBuffer> out = new ArrayDeque<>(); //the messages waiting for the socket
+        private ByteBuffer in = ByteBuffer.allocate(256); //the received bytes
+        private boolean synced = false; //did the client get the keyframe?
+
+        /**
+         * Constructor of the connection.
+         *
+         * @param channel The socket of the client.
+         * @author Adam
+         */
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Queues the message and writes as much as the socket takes. When
+         * too many messages wait, the client is resynchronized - it loses
+         * all of them (except of the one, which is partly written) and gets
+         * the keyframe after the next frame.
+         *
+         * @param message The message, it is shared by all clients.
+         * @author Adam
+         */
+        void send(ByteBuffer message) {
+            if (out.size() >= MAX_QUEUED) {
+                ByteBuffer started = out.peekFirst();
+                out.clear();
+                if (started.position() > 0) {
+                    out.add(started);
+                }
+                synced = false;
+                waiting = true;
+                resyncs++;
+                return;
+            }
+            out.add(message.duplicate());
+            try {
+                flush();
+            } catch (IOException ex) {
+                drop(this);
+            }
+        }
+
+        /**
+         * Writes the waiting messages, until the socket is full. When
+         * something is left, the selector tells, when the socket can take
+         * it.
+         *
+         * @throws IOException When the client is disconnected.
+         * @author Adam
+         */
+        void flush() throws IOException {
+            while (!out.isEmpty()) {
+                ByteBuffer message = out.peekFirst();
+                channel.write(message);
+                if (message.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                out.pollFirst();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        /**
+         * Reads the clicks of the client and queues them in the BallsData.
+         *
+         * @throws IOException When the client is disconnected or it sent
+         * something wrong.
+         * @author Adam
+         */
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                throw new IOException("Disconnected");
+            }
+            in.flip();
+            while (in.remaining() >= Protocol.HEADER) {
+                int length = in.getInt(in.position());
+                if (length < 1 || length > Protocol.MAX_CLICK) {
+                    throw new IOException("Invalid message");
+                }
+                if (in.remaining() < Protocol.HEADER + length) {
+                    break;
+                }
+                int end = in.position() + Protocol.HEADER + length;
+                in.position(in.position() + Protocol.HEADER);
+                int limit = in.limit();
+                //the click must not read the next message
+                in.limit(end);
+                try {
+                    if (in.get() != Protocol.CLICK) {
+                        throw new IOException("Unknown message");
+                    }
+                    BallsData.getInstance().click(Protocol.getSigned(in), Protocol.getSigned(in));
+                } catch (BufferUnderflowException ex) {
+                    throw new IOException("Short message");
+                }
+                in.limit(limit);
+                in.position(end);
+            }
+            in.compact();
+        }
+    }
+
+    /**
+     * Starts the server and serves the clients until it is killed.
+     *
+     * @param args The port.
+     * @author Adam
+     */
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+        try {
+            GameServer server = new GameServer(port);
+            System.out.println("Listening on port " + server.getPort());
+            server.run();
+        } catch (IOException ex) {
+            System.out.println("Server could not be started: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package game;
+
+import java.util.Random;
+
+/**
+ * One game played without any window. The session owns everything of the
+ * game - the balls (BallsData), the handler, which creates them, and the
+ * simulation - and its clock is the number of played frames, so the frames
+ * are not timed and the simulation is stepped as fast as the caller wants.
+ *
+ * <p>The balls are hit by a simple bot, which clicks on a random ball a few
+ * times per second, or by the clicks from a recording. Everything random is
+ * generated from one seed and the clicks happen in the exact frames, so the
+ * same seed and the same clicks always give the same game.
+ *
+ * <p>The sessions made by create() share nothing - they have their own
+ * balls, their handler has no clock, their games are not logged and they
+ * are measured only to the histograms given by measure() - so any number of
+ * them can be played at once, each one by one thread at a time (see
+ * SessionScheduler).
+ *
+ * @author Adam
+ */
+class GameSession implements GameListener {
+
+    private static final int INTERVAL = 1000; //how often does the handler tick in ms
+    private static final int TICK_FRAMES = INTERVAL / Simulation.STEP; //frames between two ticks
+    private static final int SPAWN_FRAMES = TICK_FRAMES / BallHandler.SPAWNS; //frames between two spawns of the extra balls
+    private BallsData data; //the balls of the game
+    private BallHandler handler; //handler, which creates new balls
+    private Simulation simulation; //the simulation, which moves the balls
+    private Random bot; //generator of the clicks of the bot
+    private int clickFrames; //frames between two clicks of the bot, 0 for no clicks
+    private Recording recording; //the recording of the clicks, null when not recorded
+    private Recording script; //the replayed clicks, null when the bot clicks
+    private int nextClick = 0; //the next replayed click
+    private long frames = 0; //number of played frames
+    private int games = 0; //number of finished games
+    private long totalScore = 0; //the sum of the scores of the finished games
+
+    /**
+     * Constructor creates the handler of the game and registers the session
+     * as the listener of the game. The balls from the previous games are
+     * removed, so the game always starts the same.
+     *
+     * @param data The balls of the game.
+     * @param size The size of the arena.
+     * @param clicksPerSecond How many times per second should the bot click.
+     * @param seed The seed of all random numbers in the game.
+     * @author Adam
+     */
+    GameSession(BallsData data, int size, int clicksPerSecond, long seed) {
+        this(data, size, clicksPerSecond, seed, true);
+    }
+
+    /**
+     * Constructor creates the handler of the game, which uses the log and
+     * the metrics of the program or not, and registers the session as the
+     * listener of the game.
+     *
+     * @param data The balls of the game.
+     * @param size The size of the arena.
+     * @param clicksPerSecond How many times per second should the bot click.
+     * @param seed The seed of all random numbers in the game.
+     * @param shared Does the game use the log and the metrics of the program?
+     * @author Adam
+     */
+    GameSession(BallsData data, int size, int clicksPerSecond, long seed, boolean shared) {
+        this.data = data;
+        data.clear();
+        handler = new BallHandler(data, INTERVAL, size, seed, shared);
+        simulation = handler.getSimulation();
+        bot = new Random(~seed);
+        clickFrames = clicksPerSecond > 0 ? Math.max(1, 1000 / Simulation.STEP / clicksPerSecond) : 0;
+        data.listen(this);
+    }
+
+    /**
+     * Creates the session with its own balls, which shares nothing with any
+     * other game.
+     *
+     * @param size The size of the arena.
+     * @param clicksPerSecond How many times per second should the bot click.
+     * @param seed The seed of all random numbers in the game.
+     * @return The new session.
+     * @author Adam
+     */
+    public static GameSession create(int size, int clicksPerSecond, long seed) {
+        return new GameSession(new BallsData(size), size, clicksPerSecond, seed, false);
+    }
+
+    /**
+     * Records the time of the steps, of the finishing of the frames, of the
+     * ticks and of the clicks of the session to the given histograms.
+     *
+     * @param steps The histogram of the steps, or null when not measured.
+     * @param fires The histogram of the finishing of the frames, or null.
+     * @param ticks The histogram of the ticks, or null.
+     * @param clicks The histogram of the clicks, or null.
+     * @author Adam
+     */
+    public void measure(Histogram steps, Histogram fires, Histogram ticks, Histogram clicks) {
+        handler.measure(steps, fires, ticks, clicks);
+    }
+
+    /**
+     * Starts recording of the clicks.
+     *
+     * @return The recording, it is finished by finishRecording().
+     * @author Adam
+     */
+    public Recording record() {
+        recording = new Recording(handler.getSeed());
+        return recording;
+    }
+
+    /**
+     * Writes the number of frames and the score to the recording.
+     *
+     * @author Adam
+     */
+    public void finishRecording() {
+        recording.finish(frames, totalScore);
+    }
+
+    /**
+     * Replays the clicks from the recording instead of the bot. The game has
+     * to be created with the seed of the recording.
+     *
+     * @param script The replayed recording.
+     * @author Adam
+     */
+    public void replay(Recording script) {
+        this.script = script;
+        clickFrames = 0;
+    }
+
+    /**
+     * Plays one frame of the game - the balls move, the bot or the recording
+     * maybe clicks, the handler creates the ordered extra balls and once per
+     * interval it ticks.
+     *
+     * @author Adam
+     */
+    public void frame() {
+        simulation.step();
+        frames++;
+        if (clickFrames > 0 && frames % clickFrames == 0) {
+            click();
+        }
+        while (script != null && nextClick < script.getClickCount() && script.getClickFrame(nextClick) == frames) {
+            hit(script.getClickX(nextClick), script.getClickY(nextClick));
+            nextClick++;
+        }
+        if (frames % SPAWN_FRAMES == SPAWN_FRAMES / 2) {
+            handler.spawn();
+        }
+        if (frames % TICK_FRAMES == 0) {
+            handler.tick();
+        }
+        simulation.finishFrame();
+    }
+
+    /**
+     * Plays until the given number of games is finished.
+     *
+     * @param count How many games should be played.
+     * @author Adam
+     */
+    public void play(int count) {
+        int target = games + count;
+        while (games < target) {
+            frame();
+        }
+    }
+
+    /**
+     * Plays the given number of frames.
+     *
+     * @param count How many frames should be played.
+     * @author Adam
+     */
+    public void playFrames(long count) {
+        for (long k = 0; k < count; k++) {
+            frame();
+        }
+    }
+
+    /**
+     * Stops listening to the game, so another session can be played with
+     * the same balls.
+     *
+     * @author Adam
+     */
+    public void close() {
+        data.forget(this);
+    }
+
+    /**
+     * Returns the balls of the session.
+     *
+     * @return The data of the game.
+     * @author Adam
+     */
+    public BallsData getBallsData() {
+        return data;
+    }
+
+    /**
+     * Returns the simulation of the session.
+     *
+     * @return The simulation.
+     * @author Adam
+     */
+    public Simulation getSimulation() {
+        return simulation;
+    }
+
+    /**
+     * Returns the number of played frames.
+     *
+     * @return The number of frames.
+     * @author Adam
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns the number of finished games.
+     *
+     * @return The number of games.
+     * @author Adam
+     */
+    public int getGames() {
+        return games;
+    }
+
+    /**
+     * Returns the sum of the scores of all finished games.
+     *
+     * @return The total score.
+     * @author Adam
+     */
+    public long getTotalScore() {
+        return totalScore;
+    }
+
+    /**
+     * The bot clicks to the middle of a random ball. The coordinates are
+     * whole numbers, as if the mouse clicked.
+     *
+     * @author Adam
+     */
+    private void click() {
+        BallStore balls = data.getData();
+        synchronized (balls) {
+            if (balls.size() == 0) {
+                return;
+            }
+            int i = bot.nextInt(balls.size());
+            hit((int) (balls.x[i] + Ball.R / 2f), (int) (balls.y[i] + Ball.R / 2f));
+        }
+    }
+
+    /**
+     * Queues the click and records it. The balls are popped at the beginning
+     * of the next step, the same way as the clicks in the window.
+     *
+     * @param x X coordinate of the click.
+     * @param y Y coordinate of the click.
+     * @author Adam
+     */
+    private void hit(int x, int y) {
+        if (recording != null) {
+            recording.addClick(frames, x, y);
+        }
+        data.click(x, y);
+    }
+
+    /**
+     * The score is not shown anywhere.
+     *
+     * @param score The new score.
+     * @author Adam
+     */
+    @Override
+    public void scoreChanged(int score) {
+    }
+
+    /**
+     * The time is not shown anywhere.
+     *
+     * @param timeleft The time left in ms.
+     * @author Adam
+     */
+    @Override
+    public void timeChanged(int timeleft) {
+    }
+
+    /**
+     * Counts the finished game.
+     *
+     * @param score The final score.
+     * @author Adam
+     */
+    @Override
+    public void gameEnded(int score) {
+        games++;
+        totalScore += score;
+    }
+}
@@ -0,0 +1,99 @@
+package game;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Main class, which plays the game without any window. The balls are
+ * created, moved and hit in the same way as in the window, but the frames
+ * are not timed - the simulation is stepped as fast as possible and the time
+ * of the game is counted in frames. The balls are hit by a simple bot, which
+ * clicks on a random ball a few times per second, or by the clicks from a
+ * recording. Everything random is generated from one seed and the clicks
+ * happen in the exact frames, so the same seed and the same clicks always
+ * give the same game. That is why the game can be recorded and replayed.
+ * It is the GameSession played with the shared balls, which prints the
+ * scores of the finished games.
+ *
+ * @author Adam
+ */
+public class HeadlessGame extends GameSession {
+
+    private boolean quiet = false; //should the scores not be printed?
+
+    /**
+     * Constructor creates the handler of the game with a random seed.
+     *
+     * @param clicksPerSecond How many times per second should the bot click.
+     * @author Adam
+     */
+    public HeadlessGame(int clicksPerSecond) {
+        this(clicksPerSecond, new Random().nextLong());
+    }
+
+    /**
+     * Constructor creates the handler of the game and registers itself as
+     * the listener of the game. The balls from the previous games are
+     * removed, so the game always starts the same.
+     *
+     * @param clicksPerSecond How many times per second should the bot click.
+     * @param seed The seed of all random numbers in the game.
+     * @author Adam
+     */
+    public HeadlessGame(int clicksPerSecond, long seed) {
+        super(BallsData.getInstance(), GameConfig.ARENA, clicksPerSecond, seed);
+    }
+
+    /**
+     * Sets, if the scores of the finished games should not be printed.
+     *
+     * @param quiet True, when nothing should be printed.
+     * @author Adam
+     */
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    /**
+     * Prints the score of the finished game.
+     *
+     * @param score The final score.
+     * @author Adam
+     */
+    @Override
+    public void gameEnded(int score) {
+        super.gameEnded(score);
+        if (!quiet) {
+            System.out.println("Game " + getGames() + ": hit " + score + " balls, " + getBallsData().getScoreboard());
+        }
+    }
+
+    /**
+     * Plays the given number of games and prints how fast they were played.
+     * When the name of the file is given, the session is recorded to it.
+     *
+     * @param args Number of games, number of clicks per second, the seed and
+     * the name of the recording file.
+     * @author Adam
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int clicks = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : new Random().nextLong();
+        HeadlessGame game = new HeadlessGame(clicks, seed);
+        Recording recording = args.length > 3 ? game.record() : null;
+        long start = System.nanoTime();
+        game.play(count);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d frames in %.3f s (%.0f frames/s), seed %d%n", game.getFrames(), seconds, game.getFrames() / seconds, seed);
+        if (recording != null) {
+            game.finishRecording();
+            try {
+                recording.write(args[3]);
+                System.out.println(recording.getClickCount() + " clicks recorded to " + args[3]);
+            } catch (IOException ex) {
+                System.out.println("Recording could not be written: " + ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package game;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds. The values are counted in buckets,
+ * which grow with the value - every power of two is split into 32 buckets of
+ * the same width, so every value is kept with the precision of about three
+ * percent, from nanoseconds to hours, in less than two thousand counters
+ * (the same idea as the HdrHistogram). The counters are atomic, so any thread
+ * can record the values without any lock and without making any garbage,
+ * and any other thread can read the percentiles at the same time.
+ *
+ * @author Adam
+ */
+class Histogram {
+
+    private static final int SUB_BITS = 5; //bits of the value kept exactly
+    private static final int SUB_COUNT = 1 << SUB_BITS; //buckets in every power of two
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT; //number of all buckets
+    private String name; //name of the measured thing
+    private AtomicLongArray counts = new AtomicLongArray(BUCKETS); //the counters of the buckets
+    private AtomicLong total = new AtomicLong(); //number of the recorded values
+    private AtomicLong sum = new AtomicLong(); //sum of the recorded values
+    private AtomicLong max = new AtomicLong(); //the biggest recorded value
+
+    /**
+     * Constructor creates the empty histogram.
+     *
+     * @param name Name of the measured thing.
+     * @author Adam
+     */
+    public Histogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the measured thing.
+     *
+     * @return The name.
+     * @author Adam
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records one value. Negative values are recorded as zero.
+     *
+     * @param nanos The duration in nanoseconds.
+     * @author Adam
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        long biggest = max.get();
+        while (value > biggest && !max.compareAndSet(biggest, value)) {
+            biggest = max.get();
+        }
+    }
+
+    /**
+     * Returns the number of the recorded values.
+     *
+     * @return The number of values.
+     * @author Adam
+     */
+    public long getCount() {
+        return total.get();
+    }
+
+    /**
+     * Returns the average of the recorded values.
+     *
+     * @return The average in nanoseconds, 0 when nothing was recorded.
+     * @author Adam
+     */
+    public double getMean() {
+        long count = total.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * Returns the biggest recorded value.
+     *
+     * @return The maximum in nanoseconds.
+     * @author Adam
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value, which is not exceeded by the given percentage of
+     * the recorded values. The result is the upper end of its bucket, so it
+     * may be a little bigger than the real value.
+     *
+     * @param percentile The percentage, from 0 to 100.
+     * @return The value in nanoseconds, 0 when nothing was recorded.
+     * @author Adam
+     */
+    public long getPercentile(double percentile) {
+        long count = 0;
+        for (int k = 0; k < BUCKETS; k++) {
+            count += counts.get(k);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long needed = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int k = 0; k < BUCKETS; k++) {
+            seen += counts.get(k);
+            if (seen >= needed) {
+                return Math.min(highest(k), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets all the recorded values. The values recorded at the same time
+     * by other threads may be partly lost.
+     *
+     * @author Adam
+     */
+    public void reset() {
+        for (int k = 0; k < BUCKETS; k++) {
+            counts.set(k, 0);
+        }
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Moves all the recorded values to a new histogram, this one starts from
+     * zero. Every counter is taken and cleared at once, so a value recorded
+     * by another thread at the same time is never lost - it is either in
+     * the snapshot, or it stays here.
+     *
+     * @return The histogram with the values recorded until now.
+     * @author Adam
+     */
+    public Histogram takeSnapshot() {
+        Histogram snapshot = new Histogram(name);
+        for (int k = 0; k < BUCKETS; k++) {
+            long count = counts.getAndSet(k, 0);
+            if (count != 0) {
+                snapshot.counts.set(k, count);
+            }
+        }
+        snapshot.total.set(total.getAndSet(0));
+        snapshot.sum.set(sum.getAndSet(0));
+        snapshot.max.set(max.getAndSet(0));
+        return snapshot;
+    }
+
+    /**
+     * Describes the histogram in one line, all values in milliseconds.
+     *
+     * @return The description.
+     * @author Adam
+     */
+    @Override
+    public String toString() {
+        return String.format("%-9s n=%-8d mean=%.3f p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f ms", name, getCount(),
+                getMean() / 1e6, getPercentile(50) / 1e6, getPercentile(90) / 1e6, getPercentile(99) / 1e6,
+                getPercentile(99.9) / 1e6, getMax() / 1e6);
+    }
+
+    /**
+     * Returns the bucket of the value. The small values have their own
+     * buckets, the bigger ones are kept only with their highest bits.
+     *
+     * @param value The non-negative value.
+     * @return The index of the bucket.
+     * @author Adam
+     */
+    static int bucket(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * Returns the biggest value, which falls into the bucket.
+     *
+     * @param bucket The index of the bucket.
+     * @return The biggest value of the bucket.
+     * @author Adam
+     */
+    static long highest(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long lowest = (long) (SUB_COUNT + bucket % SUB_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,118 @@
+package game;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.Rectangle;
+
+/**
+ * The HUD with the metrics of the game, which is drawn over the balls in the
+ * top of the game environment. Formatting of the lines makes garbage, so
+ * the lines are refreshed only twice a second and only the prepared lines
+ * are drawn in every frame. It is switched on and off by the H key (or by
+ * the system property game.hud).
+ *
+ * @author Adam
+ */
+class Hud {
+
+    private static final long REFRESH = 500000000L; //how often are the lines refreshed in ns
+    private volatile boolean shown = Boolean.getBoolean("game.hud"); //is the HUD shown?
+    private String[] lines = new String[Metrics.getAll().length]; //the shown lines
+    private long updated = 0; //when were the lines refreshed, in ns
+    private Font font = new Font(Font.MONOSPACED, Font.PLAIN, 10); //font of the lines
+    private Color background = new Color(0, 0, 0, 160); //dark background
+    private Rectangle bounds = new Rectangle(); //the part of the environment covered by the HUD
+
+    /**
+     * Tells, if the HUD is shown.
+     *
+     * @return True, when it is shown.
+     * @author Adam
+     */
+    public boolean isShown() {
+        return shown;
+    }
+
+    /**
+     * Shows the hidden HUD, or hides the shown one.
+     *
+     * @author Adam
+     */
+    public void toggle() {
+        shown = !shown;
+        updated = 0;
+    }
+
+    /**
+     * Returns the part of the environment covered by the HUD.
+     *
+     * @return The bounds of the HUD.
+     * @author Adam
+     */
+    public Rectangle getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Refreshes the lines, when the HUD is shown and they are old enough.
+     *
+     * @param component The component, where the HUD is drawn.
+     * @param insets The borders of the component.
+     * @param now The current time in ns.
+     * @return True, when the lines were refreshed.
+     * @author Adam
+     */
+    public boolean refresh(Component component, Insets insets, long now) {
+        if (!shown || now - updated < REFRESH) {
+            return false;
+        }
+        update(component, insets);
+        updated = now;
+        return true;
+    }
+
+    /**
+     * Refreshes the lines from the metrics and computes, where the HUD is.
+     *
+     * @param component The component, where the HUD is drawn.
+     * @param insets The borders of the component.
+     * @author Adam
+     */
+    public void update(Component component, Insets insets) {
+        Histogram[] all = Metrics.getAll();
+        if (lines.length != all.length) {
+            lines = new String[all.length];
+        }
+        for (int k = 0; k < all.length; k++) {
+            lines[k] = String.format("%-15s p50 %6.2f p99 %6.2f max %6.2f ms", all[k].getName(),
+                    all[k].getPercentile(50) / 1e6, all[k].getPercentile(99) / 1e6, all[k].getMax() / 1e6);
+        }
+        int height = component.getFontMetrics(font).getHeight() * lines.length + 4;
+        bounds.setBounds(insets.left, insets.top, component.getWidth() - insets.left - insets.right, height);
+    }
+
+    /**
+     * Draws the lines on the dark background.
+     *
+     * @param g2d The graphics environment.
+     * @author Adam
+     */
+    public void paint(Graphics2D g2d) {
+        g2d.setColor(background);
+        g2d.fill(bounds);
+        g2d.setColor(Color.WHITE);
+        g2d.setFont(font);
+        FontMetrics metrics = g2d.getFontMetrics();
+        int y = bounds.y + metrics.getAscent() + 2;
+        for (int k = 0; k < lines.length; k++) {
+            if (lines[k] != null) {
+                g2d.drawString(lines[k], bounds.x + 4, y);
+            }
+            y += metrics.getHeight();
+        }
+    }
+}
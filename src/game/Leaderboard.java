@@ -0,0 +1,225 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Main class, which prints the leaderboard of the games from the GameLog -
+ * the best games and the percentiles of the scores. Only the index of the
+ * log is read (it is mapped, not loaded), the best games are kept in a
+ * small heap and the scores are counted in an array by the score, so the
+ * log can have millions of games and only the records of the best games are
+ * read.
+ *
+ * @author Adam
+ */
+public class Leaderboard {
+
+    private GameLog log; //the read log
+    private long[] best; //heap of the best games, the worst of them on the top
+    private int size = 0; //how many games are in the heap
+    private long[] counts = new long[1024]; //how many games had each score
+    private long total = 0; //number of the counted games
+    private long sum = 0; //the sum of all scores
+
+    /**
+     * Constructor of the leaderboard.
+     *
+     * @param log The read log.
+     * @param top How many best games should be kept.
+     * @author Adam
+     */
+    public Leaderboard(GameLog log, int top) {
+        this.log = log;
+        best = new long[top];
+    }
+
+    /**
+     * Reads the scores of all games in the log.
+     *
+     * @author Adam
+     */
+    public void scan() {
+        long count = log.getCount();
+        for (long game = 0; game < count; game++) {
+            int score = log.getScore(game);
+            if (score >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(score + 1, counts.length * 2));
+            }
+            counts[score]++;
+            total++;
+            sum += score;
+            offer(game, score);
+        }
+    }
+
+    /**
+     * Returns the score, which the given percent of the games did not
+     * exceed.
+     *
+     * @param percent The percentile (0 to 100).
+     * @return The score.
+     * @author Adam
+     */
+    public int getPercentile(double percent) {
+        long rank = (long) Math.ceil(total * percent / 100);
+        long seen = 0;
+        for (int score = 0; score < counts.length; score++) {
+            seen += counts[score];
+            if (seen >= Math.max(1, rank)) {
+                return score;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the best games, the best one first.
+     *
+     * @return The orders of the games in the log.
+     * @author Adam
+     */
+    public long[] getBest() {
+        long[] sorted = Arrays.copyOf(best, size);
+        int[] scores = new int[size];
+        for (int k = 0; k < size; k++) {
+            scores[k] = log.getScore(sorted[k]);
+        }
+        //a simple insertion sort, there are only a few of them
+        for (int k = 1; k < size; k++) {
+            long game = sorted[k];
+            int score = scores[k];
+            int j = k - 1;
+            while (j >= 0 && (scores[j] < score || (scores[j] == score && sorted[j] > game))) {
+                sorted[j + 1] = sorted[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            sorted[j + 1] = game;
+            scores[j + 1] = score;
+        }
+        return sorted;
+    }
+
+    /**
+     * Puts the game to the heap, when it is better than the worst kept one.
+     * The older game wins, when the scores are the same.
+     *
+     * @param game The order of the game in the log.
+     * @param score The score of the game.
+     * @author Adam
+     */
+    private void offer(long game, int score) {
+        if (best.length == 0) {
+            return;
+        }
+        if (size < best.length) {
+            best[size] = game;
+            up(size++);
+        } else if (score > log.getScore(best[0])) {
+            best[0] = game;
+            down(0);
+        }
+    }
+
+    /**
+     * Tells, if the first game is worse than the second one.
+     *
+     * @param a The first game.
+     * @param b The second game.
+     * @return True, when the first game is worse.
+     * @author Adam
+     */
+    private boolean worse(long a, long b) {
+        int scoreA = log.getScore(a);
+        int scoreB = log.getScore(b);
+        return scoreA < scoreB || (scoreA == scoreB && a > b);
+    }
+
+    /**
+     * Moves the game in the heap up to its place.
+     *
+     * @param k The position of the game.
+     * @author Adam
+     */
+    private void up(int k) {
+        while (k > 0 && worse(best[k], best[(k - 1) / 2])) {
+            long swap = best[k];
+            best[k] = best[(k - 1) / 2];
+            best[(k - 1) / 2] = swap;
+            k = (k - 1) / 2;
+        }
+    }
+
+    /**
+     * Moves the game in the heap down to its place.
+     *
+     * @param k The position of the game.
+     * @author Adam
+     */
+    private void down(int k) {
+        while (2 * k + 1 < size) {
+            int child = 2 * k + 1;
+            if (child + 1 < size && worse(best[child + 1], best[child])) {
+                child++;
+            }
+            if (!worse(best[child], best[k])) {
+                return;
+            }
+            long swap = best[k];
+            best[k] = best[child];
+            best[child] = swap;
+            k = child;
+        }
+    }
+
+    /**
+     * Prints the best games and the percentiles of the scores.
+     *
+     * @param args The name of the log and the number of the best games.
+     * @author Adam
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: Leaderboard <log> [top]");
+            System.exit(2);
+        }
+        int top = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        GameLog log;
+        try {
+            log = new GameLog(args[0], false);
+        } catch (IOException ex) {
+            System.out.println("Log could not be read: " + ex.getMessage());
+            System.exit(2);
+            return;
+        }
+        long start = System.nanoTime();
+        Leaderboard board = new Leaderboard(log, top);
+        board.scan();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games read in %.3f s%n", board.total, seconds);
+        if (board.total > 0) {
+            System.out.printf("mean %.1f, p50 %d, p90 %d, p99 %d, p99.9 %d, max %d%n", (double) board.sum / board.total,
+                    board.getPercentile(50), board.getPercentile(90), board.getPercentile(99), board.getPercentile(99.9), board.getPercentile(100));
+        }
+        long[] games = board.getBest();
+        for (int k = 0; k < games.length; k++) {
+            try {
+                ByteBuffer record = log.getRecord(games[k]);
+                int game = Protocol.getNumber(record);
+                //the seed, the time and the score are in the index too
+                record.position(record.position() + 16);
+                Protocol.getNumber(record);
+                int frames = Protocol.getNumber(record);
+                int clicks = Protocol.getNumber(record);
+                System.out.printf("%3d. %5d balls  %s  seed %d, game %d, %d frames, %d clicks%n", k + 1, log.getScore(games[k]),
+                        new Date(log.getTime(games[k])), log.getSeed(games[k]), game, frames, clicks);
+            } catch (IOException ex) {
+                System.out.println("Game " + games[k] + " could not be read: " + ex.getMessage());
+            }
+        }
+        log.close();
+    }
+}
@@ -0,0 +1,337 @@
+package game;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Main class, which starts the GameServer and connects many simulated
+ * players to it over the loopback. All players are served by one thread
+ * with one selector, as the server is, so hundreds of them can run on one
+ * core next to the server. Every player decodes all frames and clicks on a
+ * random ball it knows a few times per second. The time from the start of
+ * sending a frame to its decoding by the player is recorded. At the end the
+ * game is paused, the players get all sent frames and every player must
+ * know exactly the same balls as the server (rounded to the sent units).
+ *
+ * @author Adam
+ */
+public class LoadTest {
+
+    private static final int BUFFER = 16384; //initial size of the buffer of a player
+    private Selector selector; //the selector of all players
+    private Player[] players; //the simulated players
+    private GameServer server; //the tested server
+    private Random random = new Random(); //generator of the clicks
+    private Histogram delivery = new Histogram("delivery"); //from the sending of the frame to its decoding
+    private long clickNanos; //time between two clicks of one player in ns
+    private long received = 0; //bytes received by all players
+    private long messages = 0; //messages received by all players
+    private long clicks = 0; //clicks sent by all players
+    private int failed = 0; //how many players were disconnected or got something wrong
+
+    /**
+     * Constructor connects the players to the server.
+     *
+     * @param server The tested server.
+     * @param count Number of the players.
+     * @param clicksPerSecond How many times per second should a player click.
+     * @throws IOException When the players can not be connected.
+     * @author Adam
+     */
+    public LoadTest(GameServer server, int count, int clicksPerSecond) throws IOException {
+        this.server = server;
+        clickNanos = clicksPerSecond > 0 ? 1000000000L / clicksPerSecond : Long.MAX_VALUE;
+        selector = Selector.open();
+        players = new Player[count];
+        long now = System.nanoTime();
+        for (int k = 0; k < count; k++) {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            players[k] = new Player(channel);
+            //the clicks of the players are spread over the interval
+            players[k].nextClick = now + (clickNanos == Long.MAX_VALUE ? clickNanos : (long) (random.nextDouble() * clickNanos));
+            channel.connect(new InetSocketAddress("localhost", server.getPort()));
+            channel.register(selector, SelectionKey.OP_CONNECT, players[k]);
+        }
+    }
+
+    /**
+     * Runs the players for the given time.
+     *
+     * @param nanos How long the players play in ns.
+     * @param clicking Should the players click?
+     * @throws IOException When the selector fails.
+     * @author Adam
+     */
+    public void play(long nanos, boolean clicking) throws IOException {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() - end < 0) {
+            selector.select(5);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Player player = (Player) key.attachment();
+                try {
+                    if (key.isConnectable()) {
+                        player.channel.finishConnect();
+                        key.interestOps(SelectionKey.OP_READ);
+                    } else if (key.isReadable()) {
+                        player.read();
+                    }
+                } catch (IOException ex) {
+                    player.fail(ex);
+                }
+            }
+            if (clicking) {
+                long now = System.nanoTime();
+                for (Player player : players) {
+                    if (player.alive && now - player.nextClick >= 0) {
+                        player.nextClick += clickNanos;
+                        try {
+                            player.click();
+                        } catch (IOException ex) {
+                            player.fail(ex);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Pauses the game and lets the players get all sent frames.
+     *
+     * @param timeout The longest wait in ns.
+     * @return True, when all players got the last frame.
+     * @throws IOException When the selector fails.
+     * @author Adam
+     */
+    public boolean drain(long timeout) throws IOException {
+        server.pause(true);
+        long end = System.nanoTime() + timeout;
+        while (System.nanoTime() - end < 0) {
+            //the server may just finish the last frame
+            long last = server.getFrames();
+            play(100000000L, false);
+            boolean all = last == server.getFrames();
+            for (Player player : players) {
+                all &= !player.alive || player.state.getFrame() == (int) (last & Integer.MAX_VALUE);
+            }
+            if (all) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares the balls of every player with the balls of the server. The
+     * game has to be paused and drained.
+     *
+     * @return Number of the players, which know the same balls.
+     * @author Adam
+     */
+    public int check() {
+        int same = 0;
+        BallStore balls = BallsData.getInstance().getData();
+        synchronized (balls) {
+            for (Player player : players) {
+                StateDecoder state = player.state;
+                boolean ok = player.alive && state.getCount() == balls.size();
+                for (int i = 0; ok && i < balls.size(); i++) {
+                    int ballId = balls.id[i];
+                    ok = state.isAlive(ballId) && state.getColor(ballId) == balls.color[i]
+                            && Math.abs(state.getX(ballId) - balls.x[i]) <= 0.5f / Protocol.QUANTUM
+                            && Math.abs(state.getY(ballId) - balls.y[i]) <= 0.5f / Protocol.QUANTUM;
+                }
+                if (ok) {
+                    same++;
+                }
+            }
+        }
+        return same;
+    }
+
+    /**
+     * Disconnects all players.
+     *
+     * @author Adam
+     */
+    public void close() {
+        for (Player player : players) {
+            try {
+                player.channel.close();
+            } catch (IOException ex) {
+                //it is closed anyway
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException ex) {
+            System.out.println("Selector could not be closed: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Inner class with one simulated player - its socket and what it knows
+     * about the game.
+     *
+     * @author Adam
+     */
+    class Player {
+
+        private SocketChannel channel; //the socket of the player
+        private StateDecoder state = new StateDecoder(); //the balls known by the player
+        private ByteBuffer in = ByteBuffer.allocate(BUFFER); //the received bytes
+        private ByteBuffer out = ByteBuffer.allocate(Protocol.MAX_CLICK + Protocol.HEADER); //the click being sent
+        private long nextClick; //when should the player click next, in ns
+        private boolean alive = true; //is the player still connected?
+
+        /**
+         * Constructor of the player.
+         *
+         * @param channel The socket of the player.
+         * @author Adam
+         */
+        Player(SocketChannel channel) {
+            this.channel = channel;
+            out.flip();
+        }
+
+        /**
+         * Reads and decodes all received messages.
+         *
+         * @throws IOException When the server disconnected or it sent
+         * something wrong.
+         * @author Adam
+         */
+        void read() throws IOException {
+            int read = channel.read(in);
+            if (read < 0) {
+                throw new IOException("Disconnected by the server");
+            }
+            received += read;
+            in.flip();
+            while (in.remaining() >= Protocol.HEADER) {
+                int length = in.getInt(in.position());
+                if (length < 1) {
+                    throw new IOException("Invalid message");
+                }
+                if (Protocol.HEADER + length > in.capacity()) {
+                    //the keyframe of a big game does not fit
+                    ByteBuffer bigger = ByteBuffer.allocate(Protocol.HEADER + length);
+                    bigger.put(in);
+                    in = bigger;
+                    return;
+                }
+                if (in.remaining() < Protocol.HEADER + length) {
+                    break;
+                }
+                int end = in.position() + Protocol.HEADER + length;
+                int limit = in.limit();
+                in.position(in.position() + Protocol.HEADER);
+                in.limit(end);
+                try {
+                    state.apply(in);
+                } catch (BufferUnderflowException ex) {
+                    throw new IOException("Short message");
+                }
+                in.limit(limit);
+                in.position(end);
+                messages++;
+                delivery.record(System.nanoTime() - server.getSentTime(state.getFrame()));
+            }
+            in.compact();
+        }
+
+        /**
+         * Clicks on the middle of a random known ball. When the previous
+         * click was not sent yet, the player does not click.
+         *
+         * @throws IOException When the server disconnected.
+         * @author Adam
+         */
+        void click() throws IOException {
+            if (!out.hasRemaining() && state.getCount() > 0) {
+                int ballId = random.nextInt(state.getLimit());
+                while (!state.isAlive(ballId)) {
+                    ballId = (ballId + 1) % state.getLimit();
+                }
+                out.clear();
+                Protocol.putClick(out, (int) (state.getX(ballId) + Ball.R / 2f), (int) (state.getY(ballId) + Ball.R / 2f));
+                out.flip();
+                clicks++;
+            }
+            channel.write(out);
+        }
+
+        /**
+         * Disconnects the player, which failed.
+         *
+         * @param ex The reason.
+         * @author Adam
+         */
+        void fail(IOException ex) {
+            if (alive) {
+                alive = false;
+                failed++;
+                System.out.println("Player failed: " + ex.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    //it is closed anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts the server, plays with the players for the given time and
+     * prints what the players got.
+     *
+     * @param args Number of the players, number of seconds and number of
+     * clicks per second of every player.
+     * @author Adam
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int clicksPerSecond = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        try {
+            GameServer server = new GameServer(0);
+            Threads.factory(false, "Server").newThread(server).start();
+            LoadTest test = new LoadTest(server, count, clicksPerSecond);
+            long start = System.nanoTime();
+            test.play(seconds * 1000000000L, true);
+            boolean drained = test.drain(5000000000L);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            int same = test.check();
+            long frames = server.getFrames();
+            System.out.printf("%d players, %d frames in %.1f s (%.1f frames/s), %d clicks, %d resyncs%n", count, frames, elapsed,
+                    frames / elapsed, test.clicks, server.getResyncs());
+            System.out.printf("received %.1f MB (%.1f kB/s per player), %.0f bytes per message%n", test.received / 1e6,
+                    test.received / 1e3 / elapsed / count, (double) test.received / Math.max(1, test.messages));
+            System.out.println(test.delivery);
+            System.out.println(Metrics.STEP);
+            System.out.println(Metrics.SEND);
+            System.out.println(same + " of " + count + " players know the same balls as the server" + (drained ? "" : " (not drained)"));
+            test.close();
+            server.shutdown();
+            if (same != count || test.failed > 0) {
+                System.exit(1);
+            }
+        } catch (IOException ex) {
+            System.out.println("Load test failed: " + ex.getMessage());
+            System.exit(2);
+        }
+    }
+}
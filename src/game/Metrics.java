@@ -0,0 +1,224 @@
+package game;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measurements of the game. Every important part of the game records how
+ * long it took to its histogram, and the HUD of the BallsPanel shows them.
+ * Recording is cheap (two calls of System.nanoTime() and a few atomic
+ * increments), so it is always on. When the system property game.metrics
+ * names a file, the histograms of every finished game are appended to it and
+ * then they start from zero for the next game. The game does not wait for the
+ * file - the histograms are only moved to their snapshots and the own writer
+ * thread writes them. More histograms can be added and removed while the
+ * game runs.
+ *
+ * @author Adam
+ */
+final class Metrics {
+
+    public static final Histogram STEP = new Histogram("step"); //one step of the simulation
+    public static final Histogram FIRE = new Histogram("fire"); //sending the frame to the views
+    public static final Histogram DRIFT = new Histogram("drift"); //how late the simulation woke up
+    public static final Histogram TICK = new Histogram("tick"); //one tick of the game time
+    public static final Histogram DISPATCH = new Histogram("dispatch"); //from the frame to the repainting on the EDT
+    public static final Histogram PAINT = new Histogram("paint"); //painting of the balls
+    public static final Histogram JITTER = new Histogram("jitter"); //difference of the time between two shown frames from the planned one
+    public static final Histogram CLICK = new Histogram("click"); //from the mouse press to the popped balls
+    public static final Histogram SEND = new Histogram("send"); //encoding and sending of the frame to the clients of the server
+    public static final Histogram SOUND = new Histogram("sound"); //from the mouse press to the pop in the output line
+    private static volatile Histogram[] all = {STEP, FIRE, DRIFT, TICK, DISPATCH, PAINT, JITTER, CLICK, SEND, SOUND}; //all histograms, copied when one is added
+    private static final String FILE = System.getProperty("game.metrics"); //file for the histograms, or null
+    private static final int QUEUE = 16; //how many finished games can wait for the writer
+    private static final ArrayBlockingQueue<Dump> queue = new ArrayBlockingQueue<>(QUEUE); //games waiting for the writer
+    private static final long WRITER_IDLE = 1000; //how long does the writer wait for the next game, before it ends, in ms
+    private static Thread writer; //the writer thread, null when no game waits
+
+    /**
+     * Private constructor, there are only static functions in this class.
+     *
+     * @author Adam
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Returns all the histograms.
+     *
+     * @return The histograms, they must not be changed.
+     * @author Adam
+     */
+    static Histogram[] getAll() {
+        return all;
+    }
+
+    /**
+     * Adds the histogram, which is created later (e.g. for every view), to
+     * the shown and written ones.
+     *
+     * @param histogram The new histogram.
+     * @return The same histogram.
+     * @author Adam
+     */
+    static synchronized Histogram add(Histogram histogram) {
+        Histogram[] bigger = Arrays.copyOf(all, all.length + 1);
+        bigger[all.length] = histogram;
+        all = bigger;
+        return histogram;
+    }
+
+    /**
+     * Removes the histogram added by add(), e.g. when its view is gone.
+     *
+     * @param histogram The removed histogram.
+     * @author Adam
+     */
+    static synchronized void remove(Histogram histogram) {
+        for (int k = 0; k < all.length; k++) {
+            if (all[k] == histogram) {
+                Histogram[] smaller = new Histogram[all.length - 1];
+                System.arraycopy(all, 0, smaller, 0, k);
+                System.arraycopy(all, k + 1, smaller, k, all.length - k - 1);
+                all = smaller;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves all the histograms to their snapshots, so they start from zero,
+     * and gives the snapshots to the writer thread, which appends them to
+     * the file given by the system property. It never waits, when the
+     * writer is too late, the game is dropped. Nothing happens, when the
+     * property is not set.
+     *
+     * @param score The score of the finished game.
+     * @author Adam
+     */
+    public static void dump(int score) {
+        if (FILE == null) {
+            return;
+        }
+        Histogram[] histograms = all;
+        Histogram[] snapshots = new Histogram[histograms.length];
+        for (int k = 0; k < histograms.length; k++) {
+            snapshots[k] = histograms[k].takeSnapshot();
+        }
+        if (!queue.offer(new Dump(new Date(), score, snapshots))) {
+            System.out.println("Metrics of the game were dropped, the writer is late!");
+        }
+        startWriter();
+    }
+
+    /**
+     * Starts the writer thread, when it is not running. The writer is not a
+     * daemon, so the last games are written, before the program ends.
+     *
+     * @author Adam
+     */
+    private static synchronized void startWriter() {
+        if (writer == null) {
+            writer = Threads.factory(false, "Metrics").newThread(new Writer());
+            writer.setDaemon(false);
+            writer.start();
+        }
+    }
+
+    /**
+     * Ends the writer, when no game waits for it. It is decided under the
+     * same lock as the starting, so a game offered at the same time starts
+     * the new writer, or it is written by this one.
+     *
+     * @return True, when the writer should end.
+     * @author Adam
+     */
+    private static synchronized boolean stopWriter() {
+        if (queue.isEmpty()) {
+            writer = null;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The histograms of one finished game, waiting for the writer.
+     *
+     * @author Adam
+     */
+    private static class Dump {
+
+        private Date ended; //when the game ended
+        private int score; //the score of the game
+        private Histogram[] histograms; //the snapshots of the histograms
+
+        /**
+         * Constructor keeps the histograms of the game.
+         *
+         * @param ended When the game ended.
+         * @param score The score of the game.
+         * @param histograms The snapshots of the histograms.
+         * @author Adam
+         */
+        Dump(Date ended, int score, Histogram[] histograms) {
+            this.ended = ended;
+            this.score = score;
+            this.histograms = histograms;
+        }
+    }
+
+    /**
+     * The writer thread appends the waiting games to the file, so the
+     * simulation never waits for the disk. It ends, when no game comes for
+     * a while, and the next dump starts it again.
+     *
+     * @author Adam
+     */
+    private static class Writer implements Runnable {
+
+        /**
+         * Writes the games, until no game comes for a while.
+         *
+         * @author Adam
+         */
+        @Override
+        public void run() {
+            try {
+                do {
+                    Dump dump;
+                    while ((dump = queue.poll(WRITER_IDLE, TimeUnit.MILLISECONDS)) != null) {
+                        write(dump);
+                    }
+                } while (!stopWriter());
+            } catch (InterruptedException ex) {
+                //nobody interrupts the writer, the waiting games are written by the next one
+                synchronized (Metrics.class) {
+                    writer = null;
+                }
+            }
+        }
+
+        /**
+         * Appends the histograms of one game to the file.
+         *
+         * @param dump The histograms of the game.
+         * @author Adam
+         */
+        private void write(Dump dump) {
+            try (PrintWriter out = new PrintWriter(new FileWriter(FILE, true))) {
+                out.println("Game ended " + dump.ended + ", hit " + dump.score + " balls");
+                for (Histogram histogram : dump.histograms) {
+                    out.println(histogram);
+                }
+                out.println();
+            } catch (IOException ex) {
+                System.out.println("Metrics could not be written to " + FILE + "!");
+            }
+        }
+    }
+}
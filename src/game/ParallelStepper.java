@@ -0,0 +1,136 @@
+package game;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Moves all the balls of the store at once. When there are many balls, they
+ * are split into chunks, which are moved in parallel by the ForkJoinPool.
+ * Every ball moves on its own (the same way as by Ball.move(), including the
+ * bouncing from the walls), so the chunks do not touch each other and the
+ * result is exactly the same as when the balls are moved one by one. Only
+ * the positions and the velocities are changed in parallel, the grid and
+ * the marks of the changes are updated afterwards in one thread, because
+ * they are shared. When there are fewer balls than one chunk, or the pool
+ * has only one thread, the balls are moved sequentially, because splitting
+ * them would cost more than it saves.
+ *
+ * @author Adam
+ */
+class ParallelStepper {
+
+    public static final int CHUNK = Integer.getInteger("game.parallel.chunk", 8192); //the most balls moved by one task
+    private ForkJoinPool pool; //the pool moving the chunks
+    private float[] oldX = new float[64]; //x coordinates of the balls before the move
+    private float[] oldY = new float[64]; //y coordinates of the balls before the move
+
+    /**
+     * Constructor, which uses the common pool with one thread per core.
+     *
+     * @author Adam
+     */
+    public ParallelStepper() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor with the given pool.
+     *
+     * @param pool The pool moving the chunks.
+     * @author Adam
+     */
+    public ParallelStepper(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Moves every ball once and marks it as moved. The caller has to hold
+     * the monitor of the store.
+     *
+     * @param data The data with the balls, or null when the moved balls
+     * should not be marked.
+     * @param balls The store with the balls.
+     * @author Adam
+     */
+    public void step(BallsData data, BallStore balls) {
+        int size = balls.size();
+        if (size <= CHUNK || pool.getParallelism() < 2) {
+            for (int i = 0; i < size; i++) {
+                float x = balls.x[i];
+                float y = balls.y[i];
+                Ball.move(balls, i);
+                if (data != null) {
+                    data.markMoved(i, x, y);
+                }
+            }
+            return;
+        }
+        if (oldX.length < size) {
+            oldX = Arrays.copyOf(oldX, Math.max(size, oldX.length * 2));
+            oldY = Arrays.copyOf(oldY, oldX.length);
+        }
+        pool.invoke(new Chunk(balls, oldX, oldY, 0, size));
+        //the grid and the marks are shared, so they are updated in this thread
+        for (int i = 0; i < size; i++) {
+            balls.moved(i);
+            if (data != null) {
+                data.markMoved(i, oldX[i], oldY[i]);
+            }
+        }
+    }
+
+    /**
+     * Inner class, which moves one chunk of the balls, or splits it in
+     * halves, when it is too big.
+     *
+     * @author Adam
+     */
+    static class Chunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L; //the chunks are never serialized
+        private BallStore balls; //the store with the balls
+        private float[] oldX; //x coordinates of the balls before the move
+        private float[] oldY; //y coordinates of the balls before the move
+        private int from; //index of the first moved ball
+        private int to; //index after the last moved ball
+
+        /**
+         * Constructor of the chunk of the balls.
+         *
+         * @param balls The store with the balls.
+         * @param oldX The array for x coordinates before the move.
+         * @param oldY The array for y coordinates before the move.
+         * @param from The index of the first ball.
+         * @param to The index after the last ball.
+         * @author Adam
+         */
+        Chunk(BallStore balls, float[] oldX, float[] oldY, int from, int to) {
+            this.balls = balls;
+            this.oldX = oldX;
+            this.oldY = oldY;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Moves the balls of the chunk, or moves both its halves in
+         * parallel.
+         *
+         * @author Adam
+         */
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                for (int i = from; i < to; i++) {
+                    oldX[i] = balls.x[i];
+                    oldY[i] = balls.y[i];
+                    Ball.advance(balls, i);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Chunk(balls, oldX, oldY, from, middle), new Chunk(balls, oldX, oldY, middle, to));
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package game;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * The sound of the popped balls. Everything is done by the own audio
+ * thread: it decodes the clip (clonepop.wav, or the file given by the
+ * system property game.sound; off means no sound) once at the start, opens
+ * one output line with a small buffer and then mixes all playing pops into
+ * it, block by block. Any number of pops can overlap, every pop is one
+ * voice of a fixed pool and when all voices play, the oldest one is
+ * restarted. The simulation only offers the pop to the lock-free queue and
+ * wakes the thread up, so neither the simulation nor the EDT ever touch
+ * the audio. While nothing plays, the thread is parked.
+ *
+ * The time from the click to the moment, when the pop reaches the output
+ * (the queued part of the line is counted too), is recorded in the
+ * metrics. It should stay under the BUDGET, the later pops are counted.
+ * When there is no sound device, the game stays silent.
+ *
+ * @author Adam
+ */
+class PopSound implements Runnable {
+
+    public static final String FILE = System.getProperty("game.sound", "clonepop.wav"); //the clip, or off
+    public static final long BUDGET = 50000000L; //the longest click to sound time in ns
+    private static final int VOICES = 16; //how many pops can play at once
+    private static final int BLOCK = 128; //frames mixed at once
+    private static final int LINE_BLOCKS = 4; //size of the buffer of the line in blocks
+    private static final int QUIET_BLOCKS = 8; //silent blocks written, before the thread parks
+    private ClickQueue pops = new ClickQueue(64); //the pops waiting for the audio thread
+    private short[] clip; //the decoded clip
+    private AudioFormat format; //format of the mixed sound
+    private SourceDataLine line; //the output line
+    private int[] positions = new int[VOICES]; //positions of the playing voices in the clip, -1 when free
+    private long[] started = new long[VOICES]; //when were the voices started, to find the oldest one
+    private int playing = 0; //number of the playing voices
+    private int[] mix = new int[BLOCK]; //the mixed block
+    private byte[] out = new byte[BLOCK * 2]; //the mixed block for the line
+    private long nanosPerByte; //how long one byte of the line plays, in ns
+    private volatile Thread thread; //the audio thread
+    private volatile boolean alive = true; //should the audio thread continue?
+    private volatile long late = 0; //how many pops were over the budget
+
+    /**
+     * Creates the sound and starts its audio thread, which loads the clip
+     * and opens the line. It returns right away.
+     *
+     * @return The sound, or null when it is switched off.
+     * @author Adam
+     */
+    public static PopSound start() {
+        if ("off".equals(FILE)) {
+            return null;
+        }
+        PopSound sound = new PopSound();
+        Thread thread = Threads.factory(false, "Audio").newThread(sound);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        sound.thread = thread;
+        thread.start();
+        return sound;
+    }
+
+    /**
+     * Plays the pop. It can be called by any thread and it never waits.
+     *
+     * @param clickNanos When was the click made, in ns.
+     * @author Adam
+     */
+    public void pop(long clickNanos) {
+        if (pops.offer(0, 0, clickNanos)) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Returns the number of pops, which were heard later than the budget.
+     *
+     * @return The number of late pops.
+     * @author Adam
+     */
+    public long getLate() {
+        return late;
+    }
+
+    /**
+     * Stops the audio thread and closes the line.
+     *
+     * @author Adam
+     */
+    public void close() {
+        alive = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(Simulation.SHUTDOWN_TIMEOUT);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Main loop of the audio thread. It starts the waiting pops, mixes a
+     * block and writes it to the line - the line takes it, when there is a
+     * space in its buffer, so the line keeps the pace. When nothing played
+     * for a few blocks, the thread parks until the next pop.
+     *
+     * @author Adam
+     */
+    @Override
+    public void run() {
+        try {
+            clip = decode(FILE);
+            open();
+        } catch (IOException | UnsupportedAudioFileException | LineUnavailableException | IllegalArgumentException ex) {
+            System.out.println("Sound is off: " + ex.getMessage());
+            return;
+        }
+        int quiet = 0;
+        while (alive) {
+            startPops();
+            if (playing == 0 && quiet >= QUIET_BLOCKS) {
+                LockSupport.park(this);
+                continue;
+            }
+            quiet = playing == 0 ? quiet + 1 : 0;
+            mixBlock();
+            line.write(out, 0, out.length);
+        }
+        line.close();
+    }
+
+    /**
+     * Reads the clip and converts it to the 16 bit mono samples.
+     *
+     * @param name The name of the file, or of the resource.
+     * @return The samples.
+     * @throws IOException When the clip can not be read.
+     * @throws UnsupportedAudioFileException When the clip is not a sound.
+     * @author Adam
+     */
+    private short[] decode(String name) throws IOException, UnsupportedAudioFileException {
+        try (InputStream file = open(name);
+                AudioInputStream source = AudioSystem.getAudioInputStream(new BufferedInputStream(file))) {
+            AudioFormat from = source.getFormat();
+            format = new AudioFormat(from.getSampleRate(), 16, 1, true, false);
+            try (AudioInputStream pcm = AudioSystem.getAudioInputStream(format, source)) {
+                ByteArrayOutputStream read = new ByteArrayOutputStream();
+                byte[] block = new byte[4096];
+                int length;
+                while ((length = pcm.read(block)) > 0) {
+                    read.write(block, 0, length);
+                }
+                byte[] bytes = read.toByteArray();
+                short[] samples = new short[bytes.length / 2];
+                ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+                return samples;
+            }
+        }
+    }
+
+    /**
+     * Opens the clip from the file, or from the resource of the same name.
+     *
+     * @param name The name of the file, or of the resource.
+     * @return The opened stream.
+     * @throws IOException When the clip is not found.
+     * @author Adam
+     */
+    private InputStream open(String name) throws IOException {
+        if (new File(name).exists()) {
+            return new FileInputStream(name);
+        }
+        InputStream resource = PopSound.class.getResourceAsStream("/" + name);
+        if (resource == null) {
+            throw new IOException(name + " not found");
+        }
+        return resource;
+    }
+
+    /**
+     * Opens the line with the buffer of only a few blocks and fills it with
+     * silence, so the first pop does not wait for the line to start.
+     *
+     * @throws LineUnavailableException When there is no free line.
+     * @author Adam
+     */
+    private void open() throws LineUnavailableException {
+        line = AudioSystem.getSourceDataLine(format);
+        line.open(format, BLOCK * 2 * LINE_BLOCKS);
+        line.start();
+        nanosPerByte = (long) (1e9 / (format.getSampleRate() * 2));
+        for (int k = 0; k < VOICES; k++) {
+            positions[k] = -1;
+        }
+        line.write(out, 0, out.length);
+    }
+
+    /**
+     * Starts a voice for every waiting pop. The time until the pop is heard
+     * is the time since the click and the time to play what is already
+     * queued in the line.
+     *
+     * @author Adam
+     */
+    private void startPops() {
+        while (pops.take()) {
+            int voice = 0;
+            for (int k = 0; k < VOICES; k++) {
+                if (positions[k] < 0) {
+                    voice = k;
+                    break;
+                }
+                if (started[k] < started[voice]) {
+                    voice = k;
+                }
+            }
+            if (positions[voice] < 0) {
+                playing++;
+            }
+            positions[voice] = 0;
+            long now = System.nanoTime();
+            started[voice] = now;
+            long queued = (long) (line.getBufferSize() - line.available()) * nanosPerByte;
+            long latency = now - pops.getTime() + queued;
+            Metrics.SOUND.record(latency);
+            if (latency > BUDGET) {
+                late++;
+            }
+        }
+    }
+
+    /**
+     * Mixes one block of all playing voices. The sum is clipped, so the
+     * many pops at once are only louder, they do not overflow.
+     *
+     * @author Adam
+     */
+    private void mixBlock() {
+        Arrays.fill(mix, 0);
+        for (int k = 0; k < VOICES; k++) {
+            int position = positions[k];
+            if (position < 0) {
+                continue;
+            }
+            int frames = Math.min(BLOCK, clip.length - position);
+            for (int f = 0; f < frames; f++) {
+                mix[f] += clip[position + f];
+            }
+            if (position + frames >= clip.length) {
+                positions[k] = -1;
+                playing--;
+            } else {
+                positions[k] = position + frames;
+            }
+        }
+        for (int f = 0; f < BLOCK; f++) {
+            int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[f]));
+            out[2 * f] = (byte) sample;
+            out[2 * f + 1] = (byte) (sample >> 8);
+        }
+    }
+}
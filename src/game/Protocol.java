@@ -0,0 +1,141 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The binary protocol between the GameServer and its clients. Every message
+ * starts with its length (an int, without the length itself) and the type
+ * of the message (one byte). The numbers in the messages are written by
+ * seven bits (see Recording), the signed ones are zig-zagged first, so the
+ * small negative numbers are short too. The positions of the balls are
+ * sent in the fixed point - QUANTUM units per pixel.
+ *
+ * The server sends the KEYFRAME (the whole state - the frame, the size of
+ * the arena, the score, the time left and all balls with their ids,
+ * positions and colors) to a new client and after the restart of the game,
+ * then it sends a DELTA after every frame (the frame, the score, the time
+ * left, the new balls with their positions and colors, the ids of the
+ * popped balls and the moves of the moved balls relative to their last sent
+ * positions). The client sends only the CLICK with the coordinates in the
+ * arena.
+ *
+ * @author Adam
+ */
+final class Protocol {
+
+    public static final int KEYFRAME = 1; //the whole state of the game
+    public static final int DELTA = 2; //the changes of one frame
+    public static final int CLICK = 3; //the click of the client
+    public static final int QUANTUM = 8; //units of the sent positions per pixel
+    public static final int MAX_CLICK = 16; //the longest click message
+    public static final int HEADER = 4; //the length before every message
+
+    /**
+     * Private constructor, there are only static functions in this class.
+     *
+     * @author Adam
+     */
+    private Protocol() {
+    }
+
+    /**
+     * Converts the coordinate of the arena to the sent units.
+     *
+     * @param coordinate The coordinate in pixels.
+     * @return The coordinate in the sent units.
+     * @author Adam
+     */
+    public static int quantize(float coordinate) {
+        return Math.round(coordinate * QUANTUM);
+    }
+
+    /**
+     * Converts the received coordinate back to pixels.
+     *
+     * @param units The coordinate in the sent units.
+     * @return The coordinate in pixels.
+     * @author Adam
+     */
+    public static float toPixels(int units) {
+        return (float) units / QUANTUM;
+    }
+
+    /**
+     * Writes the non-negative number by seven bits, the highest bit of each
+     * byte tells, if another byte follows.
+     *
+     * @param buffer The buffer, it has to have enough space.
+     * @param number The written number.
+     * @author Adam
+     */
+    public static void putNumber(ByteBuffer buffer, int number) {
+        while ((number & ~0x7F) != 0) {
+            buffer.put((byte) ((number & 0x7F) | 0x80));
+            number >>>= 7;
+        }
+        buffer.put((byte) number);
+    }
+
+    /**
+     * Writes the signed number, zig-zagged so that the small negative
+     * numbers take few bytes too.
+     *
+     * @param buffer The buffer, it has to have enough space.
+     * @param number The written number.
+     * @author Adam
+     */
+    public static void putSigned(ByteBuffer buffer, int number) {
+        putNumber(buffer, (number << 1) ^ (number >> 31));
+    }
+
+    /**
+     * Reads the number written by putNumber().
+     *
+     * @param buffer The buffer with the message.
+     * @return The number.
+     * @throws IOException When the number is too long.
+     * @author Adam
+     */
+    public static int getNumber(ByteBuffer buffer) throws IOException {
+        int number = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = buffer.get();
+            number |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return number;
+            }
+        }
+        throw new IOException("Malformed number in the message");
+    }
+
+    /**
+     * Reads the number written by putSigned().
+     *
+     * @param buffer The buffer with the message.
+     * @return The number.
+     * @throws IOException When the number is too long.
+     * @author Adam
+     */
+    public static int getSigned(ByteBuffer buffer) throws IOException {
+        int number = getNumber(buffer);
+        return (number >>> 1) ^ -(number & 1);
+    }
+
+    /**
+     * Writes the whole click message.
+     *
+     * @param buffer The buffer, it has to have at least MAX_CLICK bytes.
+     * @param x X coordinate of the click in the arena.
+     * @param y Y coordinate of the click in the arena.
+     * @author Adam
+     */
+    public static void putClick(ByteBuffer buffer, int x, int y) {
+        int start = buffer.position();
+        buffer.putInt(0);
+        buffer.put((byte) CLICK);
+        putSigned(buffer, x);
+        putSigned(buffer, y);
+        buffer.putInt(start, buffer.position() - start - HEADER);
+    }
+}
@@ -0,0 +1,234 @@
+package game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Recording of one headless session. The game is deterministic, when it is
+ * started with the same seed and it gets the same clicks in the same frames,
+ * so only the seed and the clicks are recorded. The file starts with the
+ * header (magic number, version, seed, number of frames and clicks, the
+ * final score), then the clicks follow. Every click is the number of frames
+ * since the previous click and its coordinates, all of them written as
+ * variable-length numbers, so a click takes usually only four or five bytes.
+ *
+ * @author Adam
+ */
+class Recording {
+
+    private static final int MAGIC = 0x48544252; //"HTBR" at the beginning of the file
+    private static final int VERSION = 3; //version of the format, 3 since the extra balls are spread
+    private long seed; //the seed of the game
+    private long frames = 0; //number of recorded frames
+    private long score = 0; //the sum of the scores of all finished games
+    private int count = 0; //number of the clicks
+    private long[] clickFrames = new long[256]; //the frames of the clicks
+    private int[] clickX = new int[256]; //x coordinates of the clicks
+    private int[] clickY = new int[256]; //y coordinates of the clicks
+
+    /**
+     * Constructor creates the empty recording of the game with the seed.
+     *
+     * @param seed The seed of the game.
+     * @author Adam
+     */
+    public Recording(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the seed of the recorded game.
+     *
+     * @return The seed.
+     * @author Adam
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the number of recorded frames.
+     *
+     * @return The number of frames.
+     * @author Adam
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns the sum of the scores of all games finished in the recording.
+     *
+     * @return The score.
+     * @author Adam
+     */
+    public long getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the number of recorded clicks.
+     *
+     * @return The number of clicks.
+     * @author Adam
+     */
+    public int getClickCount() {
+        return count;
+    }
+
+    /**
+     * Returns the frame, in which the click was made.
+     *
+     * @param k The order of the click.
+     * @return The number of the frame.
+     * @author Adam
+     */
+    public long getClickFrame(int k) {
+        return clickFrames[k];
+    }
+
+    /**
+     * Returns the x coordinate of the click.
+     *
+     * @param k The order of the click.
+     * @return The x coordinate.
+     * @author Adam
+     */
+    public int getClickX(int k) {
+        return clickX[k];
+    }
+
+    /**
+     * Returns the y coordinate of the click.
+     *
+     * @param k The order of the click.
+     * @return The y coordinate.
+     * @author Adam
+     */
+    public int getClickY(int k) {
+        return clickY[k];
+    }
+
+    /**
+     * Adds the click at the end of the recording.
+     *
+     * @param frame The frame of the click, it can not be lower than the
+     * frame of the previous click.
+     * @param x X coordinate of the click.
+     * @param y Y coordinate of the click.
+     * @author Adam
+     */
+    public void addClick(long frame, int x, int y) {
+        if (count == clickFrames.length) {
+            clickFrames = Arrays.copyOf(clickFrames, count * 2);
+            clickX = Arrays.copyOf(clickX, count * 2);
+            clickY = Arrays.copyOf(clickY, count * 2);
+        }
+        clickFrames[count] = frame;
+        clickX[count] = x;
+        clickY[count] = y;
+        count++;
+    }
+
+    /**
+     * Finishes the recording.
+     *
+     * @param frames The number of played frames.
+     * @param score The sum of the scores of all finished games.
+     * @author Adam
+     */
+    public void finish(long frames, long score) {
+        this.frames = frames;
+        this.score = score;
+    }
+
+    /**
+     * Writes the recording to the file.
+     *
+     * @param file The name of the file.
+     * @throws IOException When the file can not be written.
+     * @author Adam
+     */
+    public void write(String file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(seed);
+            out.writeLong(frames);
+            out.writeLong(score);
+            out.writeInt(count);
+            long previous = 0;
+            for (int k = 0; k < count; k++) {
+                writeNumber(out, clickFrames[k] - previous);
+                writeNumber(out, clickX[k]);
+                writeNumber(out, clickY[k]);
+                previous = clickFrames[k];
+            }
+        }
+    }
+
+    /**
+     * Reads the recording from the file.
+     *
+     * @param file The name of the file.
+     * @return The recording.
+     * @throws IOException When the file can not be read or it is not a
+     * recording.
+     * @author Adam
+     */
+    public static Recording read(String file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException(file + " is not a recording of this version of the game");
+            }
+            Recording recording = new Recording(in.readLong());
+            long frames = in.readLong();
+            long score = in.readLong();
+            int clicks = in.readInt();
+            long frame = 0;
+            for (int k = 0; k < clicks; k++) {
+                frame += readNumber(in);
+                recording.addClick(frame, (int) readNumber(in), (int) readNumber(in));
+            }
+            recording.finish(frames, score);
+            return recording;
+        }
+    }
+
+    /**
+     * Writes the non-negative number by seven bits, the highest bit of each
+     * byte tells, if another byte follows.
+     *
+     * @author Adam
+     */
+    private static void writeNumber(DataOutputStream out, long number) throws IOException {
+        while (number >= 0x80) {
+            out.writeByte((int) (number & 0x7F) | 0x80);
+            number >>>= 7;
+        }
+        out.writeByte((int) number);
+    }
+
+    /**
+     * Reads the number written by writeNumber().
+     *
+     * @author Adam
+     */
+    private static long readNumber(DataInputStream in) throws IOException {
+        long number = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            number |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return number;
+    }
+}
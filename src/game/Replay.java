@@ -0,0 +1,55 @@
+package game;
+
+import java.io.IOException;
+
+/**
+ * Main class, which replays a recorded headless session as fast as possible.
+ * The recording is played the given number of times, so a recorded session
+ * can be used as the same load every time the speed of the game is checked.
+ * After every run it prints how fast it was and if the game ended with the
+ * same score as when it was recorded (otherwise the game is not
+ * deterministic any more).
+ *
+ * @author Adam
+ */
+public class Replay {
+
+    /**
+     * Replays the recording.
+     *
+     * @param args The name of the recording file and the number of runs.
+     * @author Adam
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: Replay <recording> [runs]");
+            System.exit(2);
+        }
+        Recording recording;
+        try {
+            recording = Recording.read(args[0]);
+        } catch (IOException ex) {
+            System.out.println("Recording could not be read: " + ex.getMessage());
+            System.exit(2);
+            return;
+        }
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        boolean same = true;
+        for (int run = 1; run <= runs; run++) {
+            HeadlessGame game = new HeadlessGame(0, recording.getSeed());
+            game.setQuiet(true);
+            game.replay(recording);
+            long start = System.nanoTime();
+            game.playFrames(recording.getFrames());
+            double seconds = (System.nanoTime() - start) / 1e9;
+            game.close();
+            boolean match = game.getTotalScore() == recording.getScore();
+            same &= match;
+            System.out.printf("Run %d: %d frames in %.3f s (%.0f frames/s), score %d %s%n", run, game.getFrames(), seconds,
+                    game.getFrames() / seconds, game.getTotalScore(), match ? "as recorded" : "DIFFERS from " + recording.getScore());
+        }
+        if (!same) {
+            System.exit(1);
+        }
+    }
+}
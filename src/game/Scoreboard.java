@@ -0,0 +1,154 @@
+package game;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The score of the current game. The hits are counted in the striped
+ * counters (LongAdder). The balls are popped only by the simulation thread,
+ * which holds the monitor of the balls, and the other threads (e.g. the EDT,
+ * which shows the score) read the counters without any lock, so reading the
+ * score never blocks the popping.
+ *
+ * <p>Besides the total, the hits are counted by the color of the ball and by
+ * the second of the game, in which the ball was popped. The second is
+ * computed from the frame of the simulation, so the paused time is not
+ * counted. In the window, the simulation runs also between the games, so
+ * the seconds are counted from the frame, in which the clock of the new
+ * game starts (see setStart). The hits after the last kept second are
+ * counted in it.
+ *
+ * @author Adam
+ */
+class Scoreboard {
+
+    public static final int COLORS = 7; //number of the colors, see BallHandler.getColor
+    public static final int SECONDS = 120; //how many seconds of the game are kept
+    private LongAdder total = new LongAdder(); //all hits
+    private LongAdder[] colors = new LongAdder[COLORS]; //hits by the color of the ball
+    private LongAdder[] seconds = new LongAdder[SECONDS]; //hits by the second of the game
+    private volatile long startFrame = 0; //the frame, in which the game started
+
+    /**
+     * Constructor creates the empty scoreboard.
+     *
+     * @author Adam
+     */
+    public Scoreboard() {
+        for (int k = 0; k < COLORS; k++) {
+            colors[k] = new LongAdder();
+        }
+        for (int k = 0; k < SECONDS; k++) {
+            seconds[k] = new LongAdder();
+        }
+    }
+
+    /**
+     * Counts one popped ball. It is called by the simulation thread, which
+     * holds the monitor of the balls.
+     *
+     * @param color The color number of the ball.
+     * @param frame The frame, in which the ball was popped.
+     * @author Adam
+     */
+    public void hit(int color, long frame) {
+        total.increment();
+        colors[Math.min(Math.max(color, 0), COLORS - 1)].increment();
+        seconds[getSecond(frame)].increment();
+    }
+
+    /**
+     * Counts the seconds of the game from the frame, the hits are kept. It
+     * is used, when the game starts later than it was cleared.
+     *
+     * @param frame The frame, in which the game starts.
+     * @author Adam
+     */
+    public void setStart(long frame) {
+        startFrame = frame;
+    }
+
+    /**
+     * Starts the new game, all counters start from zero. The hits, which
+     * come at the same time, may be counted to the old or to the new game.
+     *
+     * @param frame The frame, in which the game starts.
+     * @author Adam
+     */
+    public void start(long frame) {
+        startFrame = frame;
+        total.reset();
+        for (int k = 0; k < COLORS; k++) {
+            colors[k].reset();
+        }
+        for (int k = 0; k < SECONDS; k++) {
+            seconds[k].reset();
+        }
+    }
+
+    /**
+     * Returns the number of all hits.
+     *
+     * @return The score.
+     * @author Adam
+     */
+    public int getTotal() {
+        return total.intValue();
+    }
+
+    /**
+     * Returns the number of the popped balls of the color.
+     *
+     * @param color The color number.
+     * @return The number of hits.
+     * @author Adam
+     */
+    public long getColor(int color) {
+        return colors[color].sum();
+    }
+
+    /**
+     * Returns the number of the balls popped in the second of the game.
+     *
+     * @param second The second from the start of the game.
+     * @return The number of hits.
+     * @author Adam
+     */
+    public long getHitsIn(int second) {
+        return seconds[second].sum();
+    }
+
+    /**
+     * Returns the second of the game, in which the frame is.
+     *
+     * @param frame The number of the frame.
+     * @return The second, from 0 to SECONDS-1.
+     * @author Adam
+     */
+    public int getSecond(long frame) {
+        long second = (frame - startFrame) * Simulation.STEP / 1000;
+        return (int) Math.min(Math.max(second, 0), SECONDS - 1);
+    }
+
+    /**
+     * Returns the hits by the colors and the best second of the game as a
+     * short text.
+     *
+     * @return The text.
+     * @author Adam
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("colors");
+        for (int k = 0; k < COLORS; k++) {
+            text.append(' ').append(colors[k].sum());
+        }
+        int best = 0;
+        for (int k = 1; k < SECONDS; k++) {
+            if (seconds[k].sum() > seconds[best].sum()) {
+                best = k;
+            }
+        }
+        text.append(", best second ").append(best).append(" with ").append(seconds[best].sum()).append(" hits");
+        return text.toString();
+    }
+}
@@ -0,0 +1,177 @@
+package game;
+
+import java.util.Random;
+
+/**
+ * Main class, which plays very many independent GameSessions at once (e.g.
+ * a tournament of the bots). The sessions are split to the shards, there is
+ * one shard per core and every shard is one thread, which plays only its
+ * own sessions, so a session always stays on the same thread and the
+ * sessions never wait for each other. The shard plays its sessions in turns,
+ * one second of the game time each, so all of them move forward together,
+ * until every session has played the given number of games. The sessions
+ * share nothing (see GameSession) and every shard measures the steps, the
+ * frames, the ticks and the clicks of its sessions in its own histograms,
+ * so the cores do not write to the same counters. At the end the
+ * throughput is printed - the finished sessions and games per second. The
+ * sessions are made from the seed, so the total score is the same for any
+ * number of shards.
+ *
+ * @author Adam
+ */
+public class SessionScheduler {
+
+    private static final int SLICE = 1000 / Simulation.STEP; //frames played by one session in its turn
+    private Shard[] shards; //the shards with the sessions
+
+    /**
+     * Constructor splits the sessions to the shards.
+     *
+     * @param sessions How many sessions should be played.
+     * @param games How many games should every session play.
+     * @param clicksPerSecond How many times per second should the bots click.
+     * @param shardCount Number of the shards.
+     * @param seed The seed of the first session, the next ones have the next seeds.
+     * @author Adam
+     */
+    public SessionScheduler(int sessions, int games, int clicksPerSecond, int shardCount, long seed) {
+        shards = new Shard[shardCount];
+        for (int k = 0; k < shardCount; k++) {
+            //the session i is played by the shard i % shardCount
+            int count = sessions / shardCount + (k < sessions % shardCount ? 1 : 0);
+            shards[k] = new Shard(k, shardCount, count, games, clicksPerSecond, seed);
+        }
+    }
+
+    /**
+     * Plays all sessions and waits until they finish.
+     *
+     * @throws InterruptedException When the waiting thread is interrupted.
+     * @author Adam
+     */
+    public void run() throws InterruptedException {
+        Thread[] threads = new Thread[shards.length];
+        for (int k = 0; k < shards.length; k++) {
+            threads[k] = Threads.factory(false, "Shard " + k).newThread(shards[k]);
+            threads[k].start();
+        }
+        for (int k = 0; k < shards.length; k++) {
+            threads[k].join();
+        }
+    }
+
+    /**
+     * Plays the sessions and prints the throughput.
+     *
+     * @param args Number of sessions, games per session, clicks per second,
+     * number of shards and the seed.
+     * @author Adam
+     */
+    public static void main(String[] args) {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int clicks = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int shardCount = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : new Random().nextLong();
+        SessionScheduler scheduler = new SessionScheduler(sessions, games, clicks, shardCount, seed);
+        long start = System.nanoTime();
+        try {
+            scheduler.run();
+        } catch (InterruptedException ex) {
+            System.out.println("Interrupted!");
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long frames = 0;
+        long score = 0;
+        for (Shard shard : scheduler.shards) {
+            frames += shard.frames;
+            score += shard.score;
+        }
+        System.out.printf("%d sessions of %d games on %d shards in %.3f s, seed %d%n", sessions, games, shardCount, seconds, seed);
+        System.out.printf("%.1f sessions/s, %.1f games/s, %.0f frames/s, total score %d%n",
+                sessions / seconds, (double) sessions * games / seconds, frames / seconds, score);
+        for (Shard shard : scheduler.shards) {
+            System.out.printf("shard %d: %d sessions, %d frames, %s%n", shard.order, shard.count, shard.frames, shard.steps);
+            System.out.printf("shard %d: %s%n", shard.order, shard.ticks);
+            System.out.printf("shard %d: %s%n", shard.order, shard.clicked);
+        }
+    }
+
+    /**
+     * Inner class, which is one shard - the sessions played by one thread.
+     *
+     * @author Adam
+     */
+    static class Shard implements Runnable {
+
+        private int order; //the order of the shard
+        private int shardCount; //number of all shards
+        private int count; //how many sessions does the shard play
+        private int games; //how many games should every session play
+        private int clicks; //how many times per second should the bots click
+        private long seed; //the seed of the first session of all shards
+        private Histogram steps; //the steps of the sessions of this shard
+        private Histogram fires; //the finishing of the frames of this shard
+        private Histogram ticks; //the ticks of the sessions of this shard
+        private Histogram clicked; //the clicks of the bots of this shard
+        private long frames = 0; //the played frames, read after the thread ends
+        private long score = 0; //the sum of the scores, read after the thread ends
+
+        /**
+         * Constructor of the shard, the sessions are made by its thread.
+         *
+         * @param order The order of the shard.
+         * @param shardCount Number of all shards.
+         * @param count How many sessions does the shard play.
+         * @param games How many games should every session play.
+         * @param clicks How many times per second should the bots click.
+         * @param seed The seed of the first session of all shards.
+         * @author Adam
+         */
+        public Shard(int order, int shardCount, int count, int games, int clicks, long seed) {
+            this.order = order;
+            this.shardCount = shardCount;
+            this.count = count;
+            this.games = games;
+            this.clicks = clicks;
+            this.seed = seed;
+            steps = new Histogram("step " + order);
+            fires = new Histogram("fire " + order);
+            ticks = new Histogram("tick " + order);
+            clicked = new Histogram("click " + order);
+        }
+
+        /**
+         * Makes the sessions and plays them in turns, until all of them
+         * finish their games.
+         *
+         * @author Adam
+         */
+        @Override
+        public void run() {
+            GameSession[] sessions = new GameSession[count];
+            for (int k = 0; k < count; k++) {
+                sessions[k] = GameSession.create(GameConfig.ARENA, clicks, seed + order + (long) k * shardCount);
+                sessions[k].measure(steps, fires, ticks, clicked);
+            }
+            int playing = count;
+            while (playing > 0) {
+                for (int k = 0; k < count; k++) {
+                    GameSession session = sessions[k];
+                    if (session == null) {
+                        continue;
+                    }
+                    session.playFrames(SLICE);
+                    if (session.getGames() >= games) {
+                        frames += session.getFrames();
+                        score += session.getTotalScore();
+                        session.close();
+                        sessions[k] = null;
+                        playing--;
+                    }
+                }
+            }
+        }
+    }
+}
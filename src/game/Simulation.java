@@ -0,0 +1,283 @@
+package game;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The simulation engine of the game. Instead of running every ball in its own
+ * thread, there is only one thread, which steps all the balls in one loop at
+ * the fixed timestep. The time elapsed between two wakeups is collected in the
+ * accumulator, so if the thread wakes up late, it catches up by performing
+ * more steps at once. The balls are moved by the ParallelStepper, so very
+ * many balls are moved on all cores.
+ *
+ * <p>The thread is made by a pluggable factory, so it can be a platform or a
+ * virtual one (see Threads). The paused game parks the thread, so it takes
+ * no CPU at all. When the game is restarted, the thread is stopped and the
+ * simulation waits until it really ends.
+ *
+ * <p>Every simulation moves the balls of its own BallsData, so the sessions
+ * do not share anything.
+ *
+ * @author Adam
+ */
+class Simulation implements Runnable {
+
+    public static final int STEP = 20; //length of one step in ms
+    public static final long STEP_NANOS = STEP * 1000000L; //length of one step in ns
+    private static final int MAX_CATCHUP = 5; //maximum of steps performed in one wakeup
+    public static final long SHUTDOWN_TIMEOUT = 1000; //how long to wait for the thread to end in ms
+    private BallsData data; //the balls of the game
+    private ThreadFactory factory; //factory of the simulation thread
+    private Thread thread; //the thread running the simulation loop
+    private volatile boolean running = false; //are the balls moving?
+    private volatile boolean stopping = false; //should the thread end?
+    private long frame = 0; //number of performed steps
+    private ParallelStepper stepper = new ParallelStepper(); //moves the balls
+    private Collisions collisions; //collisions of the balls, null when they pass through
+    private Histogram steps = Metrics.STEP; //where is the time of the steps recorded, or null
+    private Histogram fires = Metrics.FIRE; //where is the time of the finishing of the frames recorded, or null
+    private volatile GameClock clock; //the clock of the game time polled by the loop, or null
+
+    /**
+     * Constructor, the thread will be made by the factory chosen by the
+     * system property game.threads.
+     *
+     * @author Adam
+     */
+    public Simulation() {
+        this(BallsData.getInstance(), Threads.factory("Simulation"));
+    }
+
+    /**
+     * Constructor with the given factory of the simulation thread.
+     *
+     * @param factory The factory, which makes the simulation thread.
+     * @author Adam
+     */
+    public Simulation(ThreadFactory factory) {
+        this(BallsData.getInstance(), factory);
+    }
+
+    /**
+     * Constructor of the simulation of the given balls.
+     *
+     * @param data The balls of the game.
+     * @param factory The factory, which makes the simulation thread.
+     * @author Adam
+     */
+    public Simulation(BallsData data, ThreadFactory factory) {
+        this.data = data;
+        this.factory = factory;
+        if (Collisions.ENABLED) {
+            collisions = new Collisions();
+        }
+    }
+
+    /**
+     * Starts the movement of the balls. The simulation thread is created
+     * when the movement is started for the first time, later it is only
+     * woken up.
+     *
+     * @author Adam
+     */
+    public synchronized void start() {
+        running = true;
+        if (thread == null) {
+            thread = factory.newThread(this);
+            thread.start();
+        } else {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Pauses the movement of the balls. The simulation thread parks itself
+     * before its next step.
+     *
+     * @author Adam
+     */
+    public void pause() {
+        running = false;
+    }
+
+    /**
+     * Tells, if the balls are moving.
+     *
+     * @return True, when the simulation is started and not paused.
+     * @author Adam
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stops the simulation thread and waits until it ends, at most for the
+     * given time. The simulation can be started again later, it gets a new
+     * thread.
+     *
+     * @param timeout The longest wait in ms.
+     * @return True, when the thread has ended (or there was none).
+     * @author Adam
+     */
+    public synchronized boolean shutdown(long timeout) {
+        running = false;
+        if (thread == null) {
+            return true;
+        }
+        stopping = true;
+        //wakes up the thread, if it is parked or sleeping
+        LockSupport.unpark(thread);
+        thread.interrupt();
+        try {
+            thread.join(timeout);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            return false;
+        }
+        thread = null;
+        stopping = false;
+        return true;
+    }
+
+    /**
+     * Returns the number of steps performed since the simulation was created.
+     *
+     * @return The number of the current frame.
+     * @author Adam
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * Records the time of the steps and of the finishing of the frames to
+     * the given histograms instead of the shared metrics, e.g. so the
+     * sessions on different cores do not write to the same counters.
+     *
+     * @param steps The histogram of the steps, or null when not measured.
+     * @param fires The histogram of the finishing of the frames, or null.
+     * @author Adam
+     */
+    public void measure(Histogram steps, Histogram fires) {
+        this.steps = steps;
+        this.fires = fires;
+    }
+
+    /**
+     * Sets the clock of the game time, which is polled by the simulation
+     * thread after the steps. The thread wakes up for its next run, when it
+     * is sooner than the next step.
+     *
+     * @param clock The clock, or null.
+     * @author Adam
+     */
+    public void setClock(GameClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Performs one step of the simulation - the balls under the waiting
+     * clicks are popped, then every ball moves once and the colliding balls
+     * bounce off each other. The clicks hit the balls where they were shown
+     * in the last frame. The moved balls are only marked as changed, the
+     * views are informed by finishFrame().
+     *
+     * @author Adam
+     */
+    public void step() {
+        long start = System.nanoTime();
+        BallStore balls = data.getData();
+        synchronized (balls) {
+            data.resolveClicks();
+            //inform the others, that the positions of the balls have changed
+            stepper.step(data, balls);
+            if (collisions != null) {
+                collisions.resolve(data, balls);
+            }
+        }
+        frame++;
+        if (steps != null) {
+            steps.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sends all the changes made since the last frame to the views at once.
+     *
+     * @author Adam
+     */
+    public void finishFrame() {
+        long start = System.nanoTime();
+        data.fire(frame);
+        if (fires != null) {
+            fires.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Main loop of the simulation thread. It performs as many steps as the
+     * elapsed time requires, polls the clock of the game time and then
+     * sleeps until the next step or the next run of the clock is due. When
+     * the thread is too late, the steps which could not be performed are
+     * dropped, so the game slows down instead of freezing. While the game is
+     * paused, the thread stays parked. How late the thread wakes up is
+     * recorded in the metrics. The loop ends, when the simulation is shut
+     * down.
+     *
+     * @author Adam
+     */
+    @Override
+    public void run() {
+        long last = System.nanoTime();
+        long accumulator = 0;
+        while (!stopping) {
+            if (!running) {
+                //the paused time does not count
+                while (!running && !stopping) {
+                    LockSupport.park(this);
+                }
+                if (stopping) {
+                    return;
+                }
+                last = System.nanoTime();
+            }
+            long now = System.nanoTime();
+            accumulator += now - last;
+            last = now;
+
+            int steps = 0;
+            while (accumulator >= STEP_NANOS && steps < MAX_CATCHUP) {
+                step();
+                accumulator -= STEP_NANOS;
+                steps++;
+            }
+            if (accumulator >= STEP_NANOS) {
+                accumulator = 0;
+            }
+            GameClock current = clock;
+            int ticks = current != null ? current.poll(System.nanoTime()) : 0;
+            //the views get only one change, even after more steps
+            if (steps > 0 || ticks > 0) {
+                finishFrame();
+            }
+
+            long wait = STEP_NANOS - accumulator;
+            if (current != null) {
+                wait = Math.min(wait, current.getUntilNext(System.nanoTime()));
+            }
+            long due = System.nanoTime() + wait;
+            //unlike sleep(), the park is not rounded to whole milliseconds
+            LockSupport.parkNanos(this, wait);
+            //only the shutdown interrupts the thread
+            if (stopping) {
+                return;
+            }
+            if (running) {
+                Metrics.DRIFT.record(System.nanoTime() - due);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package game;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Three snapshots, which pass the finished frames from the simulation to
+ * the painting (triple buffering). The simulation always writes to its own
+ * back snapshot, the painting always reads its own front snapshot and the
+ * third one is in the middle. When the frame is finished, the simulation
+ * swaps its snapshot with the middle one, when the painting wants a new
+ * frame, it swaps its snapshot with the middle one too. The index of the
+ * middle snapshot and the flag of a new frame are kept in one atomic
+ * number, so each swap is only one atomic operation - neither side ever
+ * waits for the other one and nothing is copied or allocated. There can be
+ * only one writer and only one reader.
+ *
+ * @author Adam
+ */
+class SnapshotBuffer {
+
+    private static final int FRESH = 4; //flag of the new frame in the middle
+    private FrameSnapshot[] snapshots = new FrameSnapshot[3]; //the three snapshots
+    private AtomicInteger middle = new AtomicInteger(1); //index of the middle snapshot and the flag
+    private int back = 0; //index of the snapshot of the writer
+    private int front = 2; //index of the snapshot of the reader
+
+    /**
+     * Constructor creates the empty snapshots of the game environment.
+     *
+     * @param width The width of the game environment.
+     * @param height The height of the game environment.
+     * @author Adam
+     */
+    public SnapshotBuffer(int width, int height) {
+        for (int k = 0; k < snapshots.length; k++) {
+            snapshots[k] = new FrameSnapshot(width, height);
+        }
+    }
+
+    /**
+     * Returns the snapshot, which the writer can fill.
+     *
+     * @return The back snapshot.
+     * @author Adam
+     */
+    public FrameSnapshot getBack() {
+        return snapshots[back];
+    }
+
+    /**
+     * Publishes the filled back snapshot as the newest frame. It is called
+     * only by the writer.
+     *
+     * @author Adam
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    /**
+     * Returns the newest published frame. The snapshot belongs to the
+     * reader, until it calls this function again. It is called only by the
+     * reader.
+     *
+     * @return The newest snapshot.
+     * @author Adam
+     */
+    public FrameSnapshot acquire() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & ~FRESH;
+        }
+        return snapshots[front];
+    }
+}
@@ -0,0 +1,182 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the game environment, which is used to find the balls
+ * near some point quickly. The cells are as big as the balls, every ball is
+ * put to the cell with its center, so a point can be inside only the balls
+ * from its own cell and the cells next to it. Every cell keeps a linked list
+ * of the ids of its balls. The lists are kept in arrays indexed by the ball
+ * id, so moving the ball to another cell does not allocate anything.
+ *
+ * @author Adam
+ */
+class SpatialGrid {
+
+    public static final int CELL = Ball.R; //size of one cell
+    private int columns; //number of cells in x way
+    private int rows; //number of cells in y way
+    private int[] head; //the first ball in each cell, -1 for empty cell
+    private int[] next; //the next ball in the same cell by ball id
+    private int[] prev; //the previous ball in the same cell by ball id
+    private int[] cell; //the cell of each ball by ball id, -1 when not in grid
+
+    /**
+     * Constructor creates the empty grid covering the game environment.
+     *
+     * @param width The width of the game environment.
+     * @param height The height of the game environment.
+     * @param capacity How many ball ids should fit in without growing.
+     * @author Adam
+     */
+    public SpatialGrid(int width, int height, int capacity) {
+        columns = width / CELL + 1;
+        rows = height / CELL + 1;
+        head = new int[columns * rows];
+        Arrays.fill(head, -1);
+        next = new int[capacity];
+        prev = new int[capacity];
+        cell = new int[capacity];
+        Arrays.fill(cell, -1);
+    }
+
+    /**
+     * Computes the column of the cell containing the given x coordinate.
+     *
+     * @param px X coordinate.
+     * @return Column of the cell.
+     * @author Adam
+     */
+    public int column(float px) {
+        int c = (int) (px / CELL);
+        return c < 0 ? 0 : (c >= columns ? columns - 1 : c);
+    }
+
+    /**
+     * Computes the row of the cell containing the given y coordinate.
+     *
+     * @param py Y coordinate.
+     * @return Row of the cell.
+     * @author Adam
+     */
+    public int row(float py) {
+        int r = (int) (py / CELL);
+        return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+    }
+
+    /**
+     * Returns the number of cells in x way.
+     *
+     * @return The number of columns.
+     * @author Adam
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the number of cells in y way.
+     *
+     * @return The number of rows.
+     * @author Adam
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the id of the first ball in the cell.
+     *
+     * @param column Column of the cell.
+     * @param row Row of the cell.
+     * @return The id of the ball or -1, when the cell is empty.
+     * @author Adam
+     */
+    public int first(int column, int row) {
+        return head[row * columns + column];
+    }
+
+    /**
+     * Returns the id of the next ball in the same cell.
+     *
+     * @param ballId The id of the current ball.
+     * @return The id of the next ball or -1, when it was the last one.
+     * @author Adam
+     */
+    public int next(int ballId) {
+        return next[ballId];
+    }
+
+    /**
+     * Puts the ball to the cell with its center, or moves it there, when it
+     * was in another cell before. Nothing happens, when the cell is the same.
+     *
+     * @param ballId The id of the ball.
+     * @param x X coordinate of the ball.
+     * @param y Y coordinate of the ball.
+     * @author Adam
+     */
+    public void update(int ballId, float x, float y) {
+        if (ballId >= cell.length) {
+            grow(Math.max(ballId + 1, cell.length * 2));
+        }
+        int c = row(y + Ball.R / 2f) * columns + column(x + Ball.R / 2f);
+        if (cell[ballId] == c) {
+            return;
+        }
+        remove(ballId);
+        cell[ballId] = c;
+        prev[ballId] = -1;
+        next[ballId] = head[c];
+        if (head[c] >= 0) {
+            prev[head[c]] = ballId;
+        }
+        head[c] = ballId;
+    }
+
+    /**
+     * Takes the ball out of the grid.
+     *
+     * @param ballId The id of the ball.
+     * @author Adam
+     */
+    public void remove(int ballId) {
+        if (ballId >= cell.length || cell[ballId] < 0) {
+            return;
+        }
+        if (prev[ballId] >= 0) {
+            next[prev[ballId]] = next[ballId];
+        } else {
+            head[cell[ballId]] = next[ballId];
+        }
+        if (next[ballId] >= 0) {
+            prev[next[ballId]] = prev[ballId];
+        }
+        cell[ballId] = -1;
+    }
+
+    /**
+     * Takes all balls out of the grid.
+     *
+     * @author Adam
+     */
+    public void clear() {
+        Arrays.fill(head, -1);
+        Arrays.fill(cell, -1);
+    }
+
+    /**
+     * Enlarges the arrays indexed by ball id.
+     *
+     * @param capacity The new capacity.
+     * @author Adam
+     */
+    private void grow(int capacity) {
+        int oldCapacity = cell.length;
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        cell = Arrays.copyOf(cell, capacity);
+        Arrays.fill(cell, oldCapacity, capacity, -1);
+    }
+}
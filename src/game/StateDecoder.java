@@ -0,0 +1,248 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The state of the game on the side of the client of the GameServer. It
+ * applies the received keyframes and deltas (see Protocol) and keeps the
+ * position and the color of every ball by its id, so the client knows the
+ * same balls as the server, only rounded to the sent units.
+ *
+ * @author Adam
+ */
+class StateDecoder {
+
+    private int[] qx = new int[64]; //x coordinates of the balls by the ids
+    private int[] qy = new int[64]; //y coordinates of the balls by the ids
+    private byte[] colors = new byte[64]; //color numbers of the balls by the ids
+    private boolean[] known = new boolean[64]; //which ids are alive
+    private int count = 0; //how many balls are alive
+    private int limit = 0; //the highest alive id plus one
+    private int frame = -1; //the number of the last received frame
+    private int arena = 0; //the size of the arena
+    private int score = 0; //the score
+    private int timeleft = 0; //the time left in ms
+    private int keyframes = 0; //number of received keyframes
+
+    /**
+     * Applies the received message. The buffer contains the message without
+     * its length.
+     *
+     * @param message The message.
+     * @throws IOException When the message is not valid.
+     * @author Adam
+     */
+    public void apply(ByteBuffer message) throws IOException {
+        int type = message.get();
+        if (type == Protocol.KEYFRAME) {
+            readHead(message);
+            arena = Protocol.getNumber(message);
+            Arrays.fill(known, 0, limit, false);
+            count = 0;
+            limit = 0;
+            int balls = Protocol.getNumber(message);
+            for (int k = 0; k < balls; k++) {
+                put(Protocol.getNumber(message), Protocol.getSigned(message), Protocol.getSigned(message), message.get());
+            }
+            keyframes++;
+        } else if (type == Protocol.DELTA) {
+            if (keyframes == 0) {
+                throw new IOException("Delta before the keyframe");
+            }
+            readHead(message);
+            int spawned = Protocol.getNumber(message);
+            for (int k = 0; k < spawned; k++) {
+                put(Protocol.getNumber(message), Protocol.getSigned(message), Protocol.getSigned(message), message.get());
+            }
+            int removed = Protocol.getNumber(message);
+            for (int k = 0; k < removed; k++) {
+                int ballId = check(Protocol.getNumber(message));
+                known[ballId] = false;
+                count--;
+            }
+            int moved = Protocol.getNumber(message);
+            for (int k = 0; k < moved; k++) {
+                int ballId = check(Protocol.getNumber(message));
+                qx[ballId] += Protocol.getSigned(message);
+                qy[ballId] += Protocol.getSigned(message);
+            }
+        } else {
+            throw new IOException("Unknown message " + type);
+        }
+    }
+
+    /**
+     * Returns the number of the last received frame.
+     *
+     * @return The number of the frame, -1 before the keyframe.
+     * @author Adam
+     */
+    public int getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns the size of the arena.
+     *
+     * @return The size of the arena.
+     * @author Adam
+     */
+    public int getArena() {
+        return arena;
+    }
+
+    /**
+     * Returns the score.
+     *
+     * @return The score.
+     * @author Adam
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the time left.
+     *
+     * @return The time left in ms.
+     * @author Adam
+     */
+    public int getTimeleft() {
+        return timeleft;
+    }
+
+    /**
+     * Returns the number of received keyframes.
+     *
+     * @return The number of keyframes.
+     * @author Adam
+     */
+    public int getKeyframes() {
+        return keyframes;
+    }
+
+    /**
+     * Returns the number of alive balls.
+     *
+     * @return The number of balls.
+     * @author Adam
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the highest id of the alive balls plus one.
+     *
+     * @return The limit of the ids.
+     * @author Adam
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Tells, if the ball with the given id is alive.
+     *
+     * @param ballId The id of the ball.
+     * @return True, when it is alive.
+     * @author Adam
+     */
+    public boolean isAlive(int ballId) {
+        return ballId < limit && known[ballId];
+    }
+
+    /**
+     * Returns the x coordinate of the ball.
+     *
+     * @param ballId The id of the ball.
+     * @return The x coordinate in pixels.
+     * @author Adam
+     */
+    public float getX(int ballId) {
+        return Protocol.toPixels(qx[ballId]);
+    }
+
+    /**
+     * Returns the y coordinate of the ball.
+     *
+     * @param ballId The id of the ball.
+     * @return The y coordinate in pixels.
+     * @author Adam
+     */
+    public float getY(int ballId) {
+        return Protocol.toPixels(qy[ballId]);
+    }
+
+    /**
+     * Returns the color number of the ball.
+     *
+     * @param ballId The id of the ball.
+     * @return The color number.
+     * @author Adam
+     */
+    public int getColor(int ballId) {
+        return colors[ballId];
+    }
+
+    /**
+     * Reads the numbers, which are in every message.
+     *
+     * @param message The message.
+     * @throws IOException When the message is not valid.
+     * @author Adam
+     */
+    private void readHead(ByteBuffer message) throws IOException {
+        frame = Protocol.getNumber(message);
+        score = Protocol.getNumber(message);
+        timeleft = Protocol.getNumber(message);
+    }
+
+    /**
+     * Puts the new ball, or overwrites the ball with the same id.
+     *
+     * @param ballId The id of the ball.
+     * @param x The x coordinate in the sent units.
+     * @param y The y coordinate in the sent units.
+     * @param color The color number.
+     * @throws IOException When the id is not valid.
+     * @author Adam
+     */
+    private void put(int ballId, int x, int y, byte color) throws IOException {
+        if (ballId < 0) {
+            throw new IOException("Invalid ball " + ballId);
+        }
+        if (ballId >= known.length) {
+            int capacity = Math.max(ballId + 1, known.length * 2);
+            qx = Arrays.copyOf(qx, capacity);
+            qy = Arrays.copyOf(qy, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+            known = Arrays.copyOf(known, capacity);
+        }
+        if (!known[ballId]) {
+            known[ballId] = true;
+            count++;
+        }
+        qx[ballId] = x;
+        qy[ballId] = y;
+        colors[ballId] = color;
+        limit = Math.max(limit, ballId + 1);
+    }
+
+    /**
+     * Checks, that the received id belongs to an alive ball.
+     *
+     * @param ballId The received id.
+     * @return The id.
+     * @throws IOException When the ball is not alive.
+     * @author Adam
+     */
+    private int check(int ballId) throws IOException {
+        if (!isAlive(ballId)) {
+            throw new IOException("Unknown ball " + ballId);
+        }
+        return ballId;
+    }
+}
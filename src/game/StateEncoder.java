@@ -0,0 +1,240 @@
+package game;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes the state of the game for the clients of the GameServer. It is
+ * used only by the thread of the server.
+ *
+ * <p>The encoder keeps a copy of what the clients know - the last sent
+ * position and the color of every ball by its id - so the delta of a frame
+ * contains only the balls from the FrameChange and their moves are sent
+ * relative to the last sent positions. The moves are computed from the
+ * rounded positions, so the rounding errors never add up. The ids of the
+ * popped balls are used again by the store, so a ball with a known id and
+ * another color is sent as a new ball, a ball with the same color is just
+ * moved.
+ *
+ * <p>The keyframe is written from the same copy, so a client, which starts
+ * with the keyframe, knows exactly the same as the others. Every message is
+ * encoded once into its own buffer and all clients send the same bytes.
+ *
+ * @author Adam
+ */
+class StateEncoder {
+
+    private static final int BALL_BYTES = 16; //the most bytes of one ball in a message
+    private static final int HEAD_BYTES = 32; //the most bytes of the head of a message
+    private int[] qx = new int[64]; //the last sent x coordinates by the ids
+    private int[] qy = new int[64]; //the last sent y coordinates by the ids
+    private byte[] colors = new byte[64]; //the sent colors by the ids
+    private boolean[] known = new boolean[64]; //which ids the clients know
+    private int count = 0; //how many balls the clients know
+    private int limit = 0; //the highest known id plus one
+    private int[] spawns = new int[64]; //the new balls of the frame (indexes)
+    private int[] removals = new int[64]; //the popped balls of the frame (ids)
+    private int[] moves = new int[64]; //the moved balls of the frame (indexes)
+    private ByteBuffer scratch = ByteBuffer.allocate(4096); //the message is written here first
+
+    /**
+     * Makes the copy the same as the store, e.g. after the store was
+     * cleared. The caller has to hold the monitor of the store.
+     *
+     * @param balls The store of the balls.
+     * @author Adam
+     */
+    public void rebuild(BallStore balls) {
+        Arrays.fill(known, 0, limit, false);
+        count = 0;
+        limit = 0;
+        for (int i = 0; i < balls.size(); i++) {
+            remember(balls.id[i], Protocol.quantize(balls.x[i]), Protocol.quantize(balls.y[i]), balls.color[i]);
+        }
+    }
+
+    /**
+     * Encodes the keyframe with all known balls.
+     *
+     * @param frame The number of the frame.
+     * @param arena The size of the arena.
+     * @param score The score.
+     * @param timeleft The time left in ms.
+     * @return The message, ready for sending.
+     * @author Adam
+     */
+    public ByteBuffer keyframe(long frame, int arena, int score, int timeleft) {
+        ByteBuffer out = start(Protocol.KEYFRAME, count);
+        putHead(out, frame, score, timeleft);
+        Protocol.putNumber(out, arena);
+        Protocol.putNumber(out, count);
+        for (int ballId = 0; ballId < limit; ballId++) {
+            if (known[ballId]) {
+                Protocol.putNumber(out, ballId);
+                Protocol.putSigned(out, qx[ballId]);
+                Protocol.putSigned(out, qy[ballId]);
+                out.put(colors[ballId]);
+            }
+        }
+        return finish(out);
+    }
+
+    /**
+     * Encodes the changes of the frame and remembers them. The caller has
+     * to hold the monitor of the store.
+     *
+     * @param balls The store of the balls.
+     * @param change The changes of the frame.
+     * @param score The score.
+     * @param timeleft The time left in ms.
+     * @return The message, ready for sending.
+     * @author Adam
+     */
+    public ByteBuffer delta(BallStore balls, FrameChange change, int score, int timeleft) {
+        int changed = change.getChangedCount();
+        if (spawns.length < changed) {
+            spawns = new int[changed];
+            removals = new int[changed];
+            moves = new int[changed];
+        }
+        int spawned = 0;
+        int removed = 0;
+        int moved = 0;
+        for (int k = 0; k < changed; k++) {
+            int ballId = change.getChanged(k);
+            int i = balls.indexOf(ballId);
+            boolean wasKnown = ballId < limit && known[ballId];
+            if (i < 0) {
+                if (wasKnown) {
+                    removals[removed++] = ballId;
+                }
+            } else if (wasKnown && colors[ballId] == balls.color[i]) {
+                moves[moved++] = i;
+            } else {
+                spawns[spawned++] = i;
+            }
+        }
+        ByteBuffer out = start(Protocol.DELTA, changed);
+        putHead(out, change.getFrame(), score, timeleft);
+        Protocol.putNumber(out, spawned);
+        for (int k = 0; k < spawned; k++) {
+            int i = spawns[k];
+            int x = Protocol.quantize(balls.x[i]);
+            int y = Protocol.quantize(balls.y[i]);
+            Protocol.putNumber(out, balls.id[i]);
+            Protocol.putSigned(out, x);
+            Protocol.putSigned(out, y);
+            out.put(balls.color[i]);
+            remember(balls.id[i], x, y, balls.color[i]);
+        }
+        Protocol.putNumber(out, removed);
+        for (int k = 0; k < removed; k++) {
+            Protocol.putNumber(out, removals[k]);
+            known[removals[k]] = false;
+            count--;
+        }
+        Protocol.putNumber(out, moved);
+        for (int k = 0; k < moved; k++) {
+            int i = moves[k];
+            int ballId = balls.id[i];
+            int x = Protocol.quantize(balls.x[i]);
+            int y = Protocol.quantize(balls.y[i]);
+            Protocol.putNumber(out, ballId);
+            Protocol.putSigned(out, x - qx[ballId]);
+            Protocol.putSigned(out, y - qy[ballId]);
+            qx[ballId] = x;
+            qy[ballId] = y;
+        }
+        return finish(out);
+    }
+
+    /**
+     * Returns the number of balls, which the clients know.
+     *
+     * @return The number of balls.
+     * @author Adam
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Remembers the sent ball.
+     *
+     * @param ballId The id of the ball.
+     * @param x The sent x coordinate.
+     * @param y The sent y coordinate.
+     * @param color The color number.
+     * @author Adam
+     */
+    private void remember(int ballId, int x, int y, byte color) {
+        if (ballId >= known.length) {
+            int capacity = Math.max(ballId + 1, known.length * 2);
+            qx = Arrays.copyOf(qx, capacity);
+            qy = Arrays.copyOf(qy, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+            known = Arrays.copyOf(known, capacity);
+        }
+        if (!known[ballId]) {
+            known[ballId] = true;
+            count++;
+        }
+        qx[ballId] = x;
+        qy[ballId] = y;
+        colors[ballId] = color;
+        limit = Math.max(limit, ballId + 1);
+    }
+
+    /**
+     * Prepares the scratch buffer for the message with the given number of
+     * balls and writes the type after the space for the length.
+     *
+     * @param type The type of the message.
+     * @param balls The most balls in the message.
+     * @return The scratch buffer.
+     * @author Adam
+     */
+    private ByteBuffer start(int type, int balls) {
+        int needed = Protocol.HEADER + HEAD_BYTES + balls * BALL_BYTES;
+        if (scratch.capacity() < needed) {
+            scratch = ByteBuffer.allocate(Math.max(needed, scratch.capacity() * 2));
+        }
+        scratch.clear();
+        scratch.putInt(0);
+        scratch.put((byte) type);
+        return scratch;
+    }
+
+    /**
+     * Writes the numbers, which are in every message.
+     *
+     * @param out The message.
+     * @param frame The number of the frame.
+     * @param score The score.
+     * @param timeleft The time left in ms.
+     * @author Adam
+     */
+    private void putHead(ByteBuffer out, long frame, int score, int timeleft) {
+        //the frame is sent modulo 2^31, it only has to grow
+        Protocol.putNumber(out, (int) (frame & Integer.MAX_VALUE));
+        Protocol.putNumber(out, score);
+        Protocol.putNumber(out, Math.max(0, timeleft));
+    }
+
+    /**
+     * Writes the length of the message and copies it from the scratch
+     * buffer to its own buffer, which can be sent to all clients.
+     *
+     * @param out The scratch buffer with the message.
+     * @return The message.
+     * @author Adam
+     */
+    private ByteBuffer finish(ByteBuffer out) {
+        out.putInt(0, out.position() - Protocol.HEADER);
+        out.flip();
+        ByteBuffer message = ByteBuffer.allocate(out.remaining());
+        message.put(out);
+        message.flip();
+        return message.asReadOnlyBuffer();
+    }
+}
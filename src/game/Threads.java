@@ -0,0 +1,125 @@
+package game;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Factory of the threads used by the game. The threads can be either the
+ * platform ones, or the virtual ones, which are much cheaper to create, to
+ * keep and to wake up. The virtual threads exist only in newer Java versions
+ * (21 and later), so they are looked up at runtime and the platform threads
+ * are used, when they are not available. The kind is chosen by the system
+ * property game.threads (platform or virtual).
+ *
+ * @author Adam
+ */
+final class Threads {
+
+    public static final boolean VIRTUAL = "virtual".equals(System.getProperty("game.threads", "platform")); //use virtual threads?
+    private static final Method ofVirtual = find("java.lang.Thread", "ofVirtual"); //Thread.ofVirtual()
+    private static final Method name = find("java.lang.Thread$Builder", "name", String.class); //Thread.Builder.name(String)
+    private static final Method factory = find("java.lang.Thread$Builder", "factory"); //Thread.Builder.factory()
+
+    /**
+     * Private constructor, there are only static functions in this class.
+     *
+     * @author Adam
+     */
+    private Threads() {
+    }
+
+    /**
+     * Tells, if the virtual threads can be used in this JVM.
+     *
+     * @return True, when the virtual threads are available.
+     * @author Adam
+     */
+    public static boolean isVirtualAvailable() {
+        return ofVirtual != null && name != null && factory != null;
+    }
+
+    /**
+     * Returns the factory of the threads of the kind chosen by the system
+     * property.
+     *
+     * @param threadName The name of the created threads.
+     * @return The factory.
+     * @author Adam
+     */
+    public static ThreadFactory factory(String threadName) {
+        return factory(VIRTUAL, threadName);
+    }
+
+    /**
+     * Returns the factory of the threads of the given kind. When the virtual
+     * threads are not available, the platform ones are made instead.
+     *
+     * @param virtual Should the threads be virtual?
+     * @param threadName The name of the created threads.
+     * @return The factory.
+     * @author Adam
+     */
+    public static ThreadFactory factory(boolean virtual, String threadName) {
+        if (virtual && isVirtualAvailable()) {
+            try {
+                Object builder = name.invoke(ofVirtual.invoke(null), threadName);
+                return (ThreadFactory) factory.invoke(builder);
+            } catch (ReflectiveOperationException ex) {
+                System.out.println("Virtual threads failed, using platform threads!");
+            }
+        }
+        return new PlatformFactory(threadName);
+    }
+
+    /**
+     * Looks up the method, which may not exist in this Java version.
+     *
+     * @param className The name of the class.
+     * @param methodName The name of the method.
+     * @param parameters The types of the parameters.
+     * @return The method, or null when it does not exist.
+     * @author Adam
+     */
+    private static Method find(String className, String methodName, Class<?>... parameters) {
+        try {
+            return Class.forName(className).getMethod(methodName, parameters);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Inner class, which creates the platform daemon threads.
+     *
+     * @author Adam
+     */
+    static class PlatformFactory implements ThreadFactory {
+
+        private String threadName; //the name of the created threads
+
+        /**
+         * Constructor remembers the name of the threads.
+         *
+         * @param threadName The name of the created threads.
+         * @author Adam
+         */
+        PlatformFactory(String threadName) {
+            this.threadName = threadName;
+        }
+
+        /**
+         * Creates a new daemon thread, so it does not keep the game running
+         * after the window is closed.
+         *
+         * @param task The task of the thread.
+         * @return The new thread.
+         * @author Adam
+         */
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, threadName);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -12,9 +12,11 @@ public interface View {
     /**
      * This method is called, when BallsData experiences a data change. It
      * means, that the View should repaint its graphics based on the data
-     * change.
+     * change. It is called at most once per simulation frame.
      *
+     * @param change All the changes made during the frame. The object is
+     * reused, so it must not be kept after the method returns.
      * @author Adam
      */
-    public void dataChange();
+    public void dataChange(FrameChange change);
 }
@@ -0,0 +1,147 @@
+package game;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers the frame changes to one view in its own thread, so a slow view
+ * never holds the simulation back. The dispatcher keeps only one waiting
+ * change: when the view did not take the previous frame yet, the new frame
+ * is merged into it (every changed ball is in it only once and the regions
+ * are joined), so the waiting change never grows beyond the balls of the
+ * game and the view always paints the newest state. How long the
+ * oldest merged frame waited until the view finished it is recorded in the
+ * histogram of the view, which is shown with the other metrics. The views,
+ * which have to run in the simulation thread (e.g. the GameServer), are
+ * called directly.
+ *
+ * @author Adam
+ */
+class ViewDispatcher implements Runnable {
+
+    private View view; //the view, which gets the changes
+    private boolean direct; //is the view called in the simulation thread?
+    private FrameChange waiting; //the merged changes, which the view did not get yet
+    private FrameChange delivered; //the changes, which the view is just getting
+    private boolean posted = false; //is there a waiting change?
+    private long postedAt; //when was the oldest waiting frame posted, in ns
+    private Histogram lag; //from the posting of the frame to its delivery
+    private Thread thread; //the delivery thread, null for the direct view
+    private volatile boolean alive = true; //should the delivery thread continue?
+
+    /**
+     * Constructor of the dispatcher. The delivery thread is started by
+     * start().
+     *
+     * @param view The view, which gets the changes.
+     * @param direct Should the view be called in the simulation thread?
+     * @param width The width of the arena.
+     * @param height The height of the arena.
+     * @author Adam
+     */
+    public ViewDispatcher(View view, boolean direct, int width, int height) {
+        this.view = view;
+        this.direct = direct;
+        if (!direct) {
+            waiting = new FrameChange(width, height);
+            delivered = new FrameChange(width, height);
+            lag = Metrics.add(new Histogram("lag " + view.getClass().getSimpleName()));
+        }
+    }
+
+    /**
+     * Starts the delivery thread.
+     *
+     * @author Adam
+     */
+    public void start() {
+        if (!direct) {
+            thread = Threads.factory("View " + view.getClass().getSimpleName()).newThread(this);
+            thread.start();
+        }
+    }
+
+    /**
+     * Returns the view of the dispatcher.
+     *
+     * @return The view.
+     * @author Adam
+     */
+    public View getView() {
+        return view;
+    }
+
+    /**
+     * Posts the changes of the frame to the view. The simulation only copies
+     * the changes and never waits for the view. The direct view gets them
+     * right away.
+     *
+     * @param change The changes of the frame, they are not kept.
+     * @author Adam
+     */
+    public void post(FrameChange change) {
+        if (direct) {
+            view.dataChange(change);
+            return;
+        }
+        synchronized (this) {
+            if (!posted) {
+                posted = true;
+                postedAt = System.nanoTime();
+            }
+            waiting.merge(change);
+        }
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Stops the delivery thread and removes the histogram of the view from
+     * the metrics.
+     *
+     * @author Adam
+     */
+    public void close() {
+        alive = false;
+        if (lag != null) {
+            Metrics.remove(lag);
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(Simulation.SHUTDOWN_TIMEOUT);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Main loop of the delivery thread. It takes the waiting change and
+     * gives it to the view, or parks until a change is posted.
+     *
+     * @author Adam
+     */
+    @Override
+    public void run() {
+        while (alive) {
+            long since;
+            synchronized (this) {
+                if (!posted) {
+                    since = 0;
+                } else {
+                    FrameChange taken = waiting;
+                    waiting = delivered;
+                    delivered = taken;
+                    waiting.reset();
+                    posted = false;
+                    since = postedAt;
+                }
+            }
+            if (since == 0) {
+                LockSupport.park(this);
+                continue;
+            }
+            view.dataChange(delivered);
+            lag.record(System.nanoTime() - since);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package game;
+
+/**
+ * The part of the arena, which is shown in the game environment. The arena
+ * can be much bigger than the environment, so the view can be moved and
+ * zoomed. The viewport converts the coordinates of the arena (where the
+ * balls are) to the coordinates of the screen and back. When the whole
+ * arena fits the environment, the viewport does not change anything. The
+ * attributes are volatile, the render thread reads them while the EDT
+ * changes them; it may see a half-changed viewport for one frame, which only
+ * shifts the picture.
+ *
+ * @author Adam
+ */
+class Viewport {
+
+    private static final double MAX_SCALE = 4; //the biggest zoom
+    private int arena; //size of the square arena
+    private int width; //width of the shown environment on the screen
+    private int height; //height of the shown environment on the screen
+    private volatile double x = 0; //x coordinate of the arena in the top left corner
+    private volatile double y = 0; //y coordinate of the arena in the top left corner
+    private volatile double scale = 1; //how many pixels is one unit of the arena
+
+    /**
+     * Constructor creates the viewport showing the top left corner of the
+     * arena without zoom.
+     *
+     * @param arena The size of the arena.
+     * @param width The width of the environment.
+     * @param height The height of the environment.
+     * @author Adam
+     */
+    public Viewport(int arena, int width, int height) {
+        this.arena = arena;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns the x coordinate of the arena in the top left corner.
+     *
+     * @return The x coordinate.
+     * @author Adam
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Returns the y coordinate of the arena in the top left corner.
+     *
+     * @return The y coordinate.
+     * @author Adam
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Returns the zoom.
+     *
+     * @return How many pixels is one unit of the arena.
+     * @author Adam
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Tells, if the arena is shown as it is - not moved and not zoomed.
+     *
+     * @return True, when the coordinates of the arena are the same as on
+     * the screen.
+     * @author Adam
+     */
+    public boolean isIdentity() {
+        return x == 0 && y == 0 && scale == 1;
+    }
+
+    /**
+     * Converts the x coordinate on the screen to the arena.
+     *
+     * @param sx X coordinate on the screen.
+     * @return X coordinate in the arena.
+     * @author Adam
+     */
+    public float toArenaX(int sx) {
+        return (float) (x + sx / scale);
+    }
+
+    /**
+     * Converts the y coordinate on the screen to the arena.
+     *
+     * @param sy Y coordinate on the screen.
+     * @return Y coordinate in the arena.
+     * @author Adam
+     */
+    public float toArenaY(int sy) {
+        return (float) (y + sy / scale);
+    }
+
+    /**
+     * Moves the view by the given number of pixels.
+     *
+     * @param dx Pixels in x way.
+     * @param dy Pixels in y way.
+     * @author Adam
+     */
+    public synchronized void pan(int dx, int dy) {
+        moveTo(x + dx / scale, y + dy / scale);
+    }
+
+    /**
+     * Zooms the view, the point under the given pixel stays where it is.
+     *
+     * @param factor How many times should the zoom grow.
+     * @param sx X coordinate of the fixed pixel.
+     * @param sy Y coordinate of the fixed pixel.
+     * @author Adam
+     */
+    public synchronized void zoom(double factor, int sx, int sy) {
+        double ax = x + sx / scale;
+        double ay = y + sy / scale;
+        //the whole arena can be shown, but not smaller
+        double smallest = Math.min(1, (double) Math.min(width, height) / arena);
+        scale = Math.max(smallest, Math.min(MAX_SCALE, scale * factor));
+        moveTo(ax - sx / scale, ay - sy / scale);
+    }
+
+    /**
+     * Shows the top left corner of the arena without zoom.
+     *
+     * @author Adam
+     */
+    public synchronized void reset() {
+        scale = 1;
+        moveTo(0, 0);
+    }
+
+    /**
+     * Moves the top left corner of the view, but keeps the view inside the
+     * arena.
+     *
+     * @param ax X coordinate in the arena.
+     * @param ay Y coordinate in the arena.
+     * @author Adam
+     */
+    private void moveTo(double ax, double ay) {
+        x = Math.max(0, Math.min(ax, arena - width / scale));
+        y = Math.max(0, Math.min(ay, arena - height / scale));
+    }
+}
@@ -0,0 +1,151 @@
+package game;
+
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import javax.swing.SwingUtilities;
+
+/**
+ * Moves and zooms the viewport by the mouse and the keys. The view is moved
+ * by dragging with the right (or the middle) button and by the arrows, it is
+ * zoomed by the mouse wheel (around the mouse) and by the + and - keys, the
+ * key 0 shows the top left corner without zoom. The left button is left for
+ * hitting the balls.
+ *
+ * @author Adam
+ */
+class ViewportControl extends MouseAdapter implements KeyListener {
+
+    private static final int STEP = 40; //how many pixels the arrows move the view
+    private static final double ZOOM = 1.25; //how much one wheel click zooms
+    private Viewport viewport; //the controlled viewport
+    private Runnable changed; //called, when the viewport has changed
+    private int lastX; //x coordinate of the mouse during the dragging
+    private int lastY; //y coordinate of the mouse during the dragging
+    private boolean dragging = false; //is the view being dragged?
+
+    /**
+     * Constructor of the control of the viewport.
+     *
+     * @param viewport The controlled viewport.
+     * @param changed Called, when the viewport has changed.
+     * @author Adam
+     */
+    public ViewportControl(Viewport viewport, Runnable changed) {
+        this.viewport = viewport;
+        this.changed = changed;
+    }
+
+    /**
+     * Starts dragging by the right or the middle button.
+     *
+     * @param e The mouse event.
+     * @author Adam
+     */
+    @Override
+    public void mousePressed(MouseEvent e) {
+        dragging = !SwingUtilities.isLeftMouseButton(e);
+        lastX = e.getX();
+        lastY = e.getY();
+    }
+
+    /**
+     * Ends the dragging.
+     *
+     * @param e The mouse event.
+     * @author Adam
+     */
+    @Override
+    public void mouseReleased(MouseEvent e) {
+        dragging = false;
+    }
+
+    /**
+     * Moves the view with the mouse.
+     *
+     * @param e The mouse event.
+     * @author Adam
+     */
+    @Override
+    public void mouseDragged(MouseEvent e) {
+        if (dragging) {
+            viewport.pan(lastX - e.getX(), lastY - e.getY());
+            lastX = e.getX();
+            lastY = e.getY();
+            changed.run();
+        }
+    }
+
+    /**
+     * Zooms the view around the mouse.
+     *
+     * @param e The wheel event.
+     * @author Adam
+     */
+    @Override
+    public void mouseWheelMoved(MouseWheelEvent e) {
+        viewport.zoom(Math.pow(ZOOM, -e.getWheelRotation()), e.getX(), e.getY());
+        changed.run();
+    }
+
+    /**
+     * Moves or zooms the view by the keys.
+     *
+     * @param e The key event.
+     * @author Adam
+     */
+    @Override
+    public void keyPressed(KeyEvent e) {
+        switch (e.getKeyCode()) {
+            case KeyEvent.VK_LEFT:
+                viewport.pan(-STEP, 0);
+                break;
+            case KeyEvent.VK_RIGHT:
+                viewport.pan(STEP, 0);
+                break;
+            case KeyEvent.VK_UP:
+                viewport.pan(0, -STEP);
+                break;
+            case KeyEvent.VK_DOWN:
+                viewport.pan(0, STEP);
+                break;
+            case KeyEvent.VK_PLUS:
+            case KeyEvent.VK_ADD:
+            case KeyEvent.VK_EQUALS:
+                viewport.zoom(ZOOM, e.getComponent().getWidth() / 2, e.getComponent().getHeight() / 2);
+                break;
+            case KeyEvent.VK_MINUS:
+            case KeyEvent.VK_SUBTRACT:
+                viewport.zoom(1 / ZOOM, e.getComponent().getWidth() / 2, e.getComponent().getHeight() / 2);
+                break;
+            case KeyEvent.VK_0:
+                viewport.reset();
+                break;
+            default:
+                return;
+        }
+        changed.run();
+    }
+
+    /**
+     * Only pressing of the keys is needed.
+     *
+     * @param e The key event.
+     * @author Adam
+     */
+    @Override
+    public void keyReleased(KeyEvent e) {
+    }
+
+    /**
+     * Only pressing of the keys is needed.
+     *
+     * @param e The key event.
+     * @author Adam
+     */
+    @Override
+    public void keyTyped(KeyEvent e) {
+    }
+}
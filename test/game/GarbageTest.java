@@ -0,0 +1,109 @@
+package game;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks, that the warmed up game allocates nothing. Many headless games
+ * are played with the bot clicking 20 times per second, so the balls are
+ * created and popped all the time.
+ *
+ * <p>The JVM allocates a few strings in the thread of the game, when it asks
+ * for the C2 compilation of a method (the string constants of its class are
+ * resolved), and that can happen long after the warmup. So the games are
+ * measured in rounds, the first clean round may come later, but after it all
+ * the next rounds must allocate nothing too - the garbage, which comes only
+ * sometimes, is reported as well. The games are played from the fixed seed
+ * and the arrays of the game grow to much more balls than the games have
+ * before the warmup, so the growing of the arrays is never measured.
+ *
+ * @author Adam
+ */
+public class GarbageTest {
+
+    private static final int WARMUP = 20; //games played before the garbage is measured
+    private static final int GAMES = 100; //games, in which the garbage is measured
+    private static final int ROUNDS = 10; //how many times are the games measured, before the garbage is reported
+    private static final int CLEAN = 5; //rounds, which must stay clean after the first clean one
+    private static final long SEED = 42; //seed of the measured games, so every run plays the same ones
+    private static final int BALLS = 256; //balls, to which the arrays of the game grow before the warmup, far more than one game has
+    private static final int FRAMES = 4; //frames played with them, so the alternating buffers grow too
+    private Random generator = new Random(SEED); //generator of the balls of the presizing
+
+    /**
+     * Plays the games in rounds and checks, that they stop allocating and
+     * then stay clean. When the JVM can not count the allocated bytes, the
+     * test fails, it does not pass without measuring.
+     *
+     * @author Adam
+     */
+    @Test
+    public void warmedUpGameMakesNoGarbage() {
+        assertTrue("The JVM can not count the allocated bytes of a thread", Benchmark.allocatedBytes() >= 0);
+        BallsData data = BallsData.getInstance();
+        data.clear();
+        HeadlessGame game = new HeadlessGame(20, SEED);
+        game.setQuiet(true);
+        presize(data, game.getSimulation());
+        game.play(WARMUP);
+        data.getScoreboard().toString(); //the quiet games never print the score, so its strings are resolved here, not by the JIT in a measured round
+        long overhead = measuringOverhead();
+        int clean = 0; //clean rounds since the first one
+        for (int round = 1; round <= ROUNDS || (clean > 0 && clean < CLEAN); round++) {
+            long bytes = Benchmark.allocatedBytes();
+            game.play(GAMES);
+            bytes = Benchmark.allocatedBytes() - bytes - overhead;
+            if (bytes <= 0) {
+                clean++;
+                if (clean == CLEAN) {
+                    return;
+                }
+            } else if (clean > 0) {
+                fail("The game allocated " + bytes + " bytes in the round " + round + " after a clean round");
+            }
+        }
+        fail("The game allocates in every round");
+    }
+
+    /**
+     * Fills the arena with many balls and plays a few frames with them, so
+     * all the arrays of the game (the store, the grid, the collisions, the
+     * changes and the snapshots of the frames) grow to fit them. Then the
+     * balls are removed again.
+     *
+     * @param data The balls of the game.
+     * @param simulation The simulation of the game.
+     * @author Adam
+     */
+    private void presize(BallsData data, Simulation simulation) {
+        int size = GameConfig.ARENA;
+        long count = (long) BALLS * size * size / ((long) GameConfig.DIMENSION * GameConfig.DIMENSION);
+        for (long k = 0; k < count; k++) {
+            data.addBall(generator.nextInt(size), generator.nextInt(size), generator.nextInt(4) + 1, generator.nextInt(4) + 1, generator.nextInt(6));
+        }
+        for (int k = 0; k < FRAMES; k++) {
+            simulation.step();
+            simulation.finishFrame();
+        }
+        data.clear();
+    }
+
+    /**
+     * Returns how many bytes are allocated by the measuring of the allocated
+     * bytes itself (the JVM makes some objects, when it is asked).
+     *
+     * @return The allocated bytes.
+     * @author Adam
+     */
+    private static long measuringOverhead() {
+        long overhead = Long.MAX_VALUE;
+        for (int k = 0; k < 10; k++) {
+            long bytes = Benchmark.allocatedBytes();
+            overhead = Math.min(overhead, Benchmark.allocatedBytes() - bytes);
+        }
+        return overhead;
+    }
+}
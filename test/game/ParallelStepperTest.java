@@ -0,0 +1,74 @@
+package game;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+/**
+ * Checks, that the ParallelStepper moves the balls exactly the same way as
+ * one thread does.
+ *
+ * @author Adam
+ */
+public class ParallelStepperTest {
+
+    private static final int[] COUNTS = {1000, 100000, 250000}; //numbers of balls moved in parallel
+    private static final int STEPS = 100; //steps compared with the sequential ones
+
+    /**
+     * Moves the same balls sequentially and in parallel with all the cores
+     * (at least two threads) and compares them.
+     *
+     * @author Adam
+     */
+    @Test
+    public void sameAsSequential() {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        for (int n : COUNTS) {
+            assertTrue(n + " balls moved by " + threads + " threads differ from the sequential ones", sameAsSequential(n, threads));
+        }
+    }
+
+    /**
+     * Moves the same balls sequentially and in parallel and compares them.
+     *
+     * @param n The number of balls.
+     * @param threads The number of threads of the parallel steps.
+     * @return True, when all balls are the same after all the steps.
+     * @author Adam
+     */
+    private static boolean sameAsSequential(int n, int threads) {
+        int size = (int) Math.sqrt(n) * 2 * Ball.R;
+        BallStore sequential = new BallStore(size, size);
+        Benchmark.fill(sequential, n, size);
+        BallStore parallel = new BallStore(size, size);
+        synchronized (parallel) {
+            for (int i = 0; i < n; i++) {
+                parallel.add(sequential.x[i], sequential.y[i], sequential.vx[i], sequential.vy[i], sequential.color[i]);
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ParallelStepper stepper = new ParallelStepper(pool);
+        synchronized (sequential) {
+            for (int k = 0; k < STEPS; k++) {
+                for (int i = 0; i < n; i++) {
+                    Ball.move(sequential, i);
+                }
+            }
+        }
+        synchronized (parallel) {
+            for (int k = 0; k < STEPS; k++) {
+                stepper.step(null, parallel);
+            }
+        }
+        pool.shutdown();
+        for (int i = 0; i < n; i++) {
+            if (sequential.x[i] != parallel.x[i] || sequential.y[i] != parallel.y[i]
+                    || sequential.vx[i] != parallel.vx[i] || sequential.vy[i] != parallel.vy[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,69 @@
+package game;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.junit.Test;
+
+/**
+ * Checks, that the restarts of the game leave no thread behind and that the
+ * paused game takes (almost) no CPU.
+ *
+ * @author Adam
+ */
+public class RestartTest {
+
+    private static final int RESTARTS = 500; //how many times is the game restarted
+    private static final int BALLS = 100; //balls in the restarted game
+    private static final long CPU_WINDOW = 1000; //how long is the CPU usage measured in ms
+    private static final double PAUSED_CPU = 0.02; //the most CPU the paused game may take
+
+    /**
+     * Starts the game, restarts it many times and compares the number of
+     * threads and the CPU usage before and after. Then pauses the game and
+     * measures, how much CPU it takes.
+     *
+     * @throws InterruptedException When the test is interrupted.
+     * @author Adam
+     */
+    @Test
+    public void restartsStayFlat() throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        BallHandler handler = new BallHandler(Simulation.STEP, GameConfig.DIMENSION, 42);
+        handler.start();
+        Benchmark.fill(BallsData.getInstance().getData(), BALLS);
+        Thread.sleep(CPU_WINDOW);
+        int threadsBefore = threads.getThreadCount();
+        double cpuBefore = cpuUsage();
+        for (int k = 0; k < RESTARTS; k++) {
+            handler.restart();
+            Benchmark.fill(BallsData.getInstance().getData(), BALLS);
+        }
+        Thread.sleep(CPU_WINDOW);
+        int threadsAfter = threads.getThreadCount();
+        double cpuAfter = cpuUsage();
+        handler.stop();
+        Thread.sleep(CPU_WINDOW);
+        double cpuPaused = cpuUsage();
+        BallsData.getInstance().clear();
+        assertTrue("The restarts leave threads behind: " + threadsBefore + " -> " + threadsAfter, threadsAfter <= threadsBefore);
+        assertTrue("The restarts leave CPU usage behind: " + cpuBefore + " -> " + cpuAfter, cpuAfter <= cpuBefore * 1.5 + PAUSED_CPU);
+        assertTrue("The paused game takes " + cpuPaused + " of a core", cpuPaused <= PAUSED_CPU);
+    }
+
+    /**
+     * Measures, which part of one core the process takes during the CPU
+     * window.
+     *
+     * @return The used part of one core.
+     * @throws InterruptedException When the test is interrupted.
+     * @author Adam
+     */
+    private static double cpuUsage() throws InterruptedException {
+        long cpu = Benchmark.processCpuTime();
+        long start = System.nanoTime();
+        Thread.sleep(CPU_WINDOW);
+        return (double) (Benchmark.processCpuTime() - cpu) / (System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,115 @@
+package game;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks, that the client, which decodes the keyframe and then the deltas
+ * (see StateDecoder), knows the same balls as the StateEncoder sent - every
+ * ball, its color and its position rounded to the sent units. The balls are
+ * moved, popped and created in every frame and the popped ids are used again
+ * by the store, so the new balls with the known ids are sent too.
+ *
+ * @author Adam
+ */
+public class StateEncoderTest {
+
+    private static final int SIZE = 400; //size of the arena
+    private static final int BALLS = 50; //balls at the start
+    private static final int FRAMES = 500; //encoded frames
+    private static final int CHANGES = 3; //the most popped and created balls in one frame
+
+    /**
+     * Encodes and decodes many frames and compares the balls after each one.
+     *
+     * @throws IOException When the decoder does not accept the message.
+     * @author Adam
+     */
+    @Test
+    public void decodedBallsAreTheSame() throws IOException {
+        Random random = new Random(7);
+        BallStore balls = new BallStore(SIZE, SIZE);
+        FrameChange change = new FrameChange(SIZE, SIZE);
+        StateEncoder encoder = new StateEncoder();
+        StateDecoder decoder = new StateDecoder();
+        synchronized (balls) {
+            for (int k = 0; k < BALLS; k++) {
+                addBall(balls, random);
+            }
+            encoder.rebuild(balls);
+            decoder.apply(body(encoder.keyframe(0, SIZE, 0, 60000)));
+            assertSame(balls, decoder, 0);
+            for (int frame = 1; frame <= FRAMES; frame++) {
+                change.reset();
+                change.setFrame(frame);
+                for (int i = 0; i < balls.size(); i++) {
+                    Ball.move(balls, i);
+                    change.add(balls.id[i]);
+                }
+                for (int k = random.nextInt(CHANGES + 1); k > 0 && balls.size() > 0; k--) {
+                    int i = random.nextInt(balls.size());
+                    change.add(balls.id[i]);
+                    balls.remove(i);
+                }
+                for (int k = random.nextInt(CHANGES + 1); k > 0; k--) {
+                    int i = addBall(balls, random);
+                    change.add(balls.id[i]);
+                }
+                decoder.apply(body(encoder.delta(balls, change, frame, 60000 - frame)));
+                assertSame(balls, decoder, frame);
+            }
+        }
+        assertEquals(1, decoder.getKeyframes());
+    }
+
+    /**
+     * Adds a random ball to the store.
+     *
+     * @param balls The store of the balls.
+     * @param random The generator of the ball.
+     * @return The index of the new ball.
+     * @author Adam
+     */
+    private static int addBall(BallStore balls, Random random) {
+        return balls.add(random.nextInt(SIZE - 2 * Ball.R), random.nextInt(SIZE - 2 * Ball.R), random.nextFloat() * 8 - 4,
+                random.nextFloat() * 8 - 4, random.nextInt(6));
+    }
+
+    /**
+     * Returns the message without its length, as the client reads it.
+     *
+     * @param message The sent message.
+     * @return The body of the message.
+     * @author Adam
+     */
+    private static ByteBuffer body(ByteBuffer message) {
+        ByteBuffer body = message.duplicate();
+        body.position(Protocol.HEADER);
+        return body;
+    }
+
+    /**
+     * Checks, that the decoder knows the same balls as the store.
+     *
+     * @param balls The store of the balls.
+     * @param decoder The state of the client.
+     * @param frame The number of the frame.
+     * @author Adam
+     */
+    private static void assertSame(BallStore balls, StateDecoder decoder, int frame) {
+        assertEquals("balls in the frame " + frame, balls.size(), decoder.getCount());
+        assertEquals("score in the frame " + frame, frame, decoder.getScore());
+        for (int i = 0; i < balls.size(); i++) {
+            int ballId = balls.id[i];
+            assertTrue("ball " + ballId + " in the frame " + frame, decoder.isAlive(ballId));
+            assertEquals("color of the ball " + ballId + " in the frame " + frame, balls.color[i], decoder.getColor(ballId));
+            assertEquals("x of the ball " + ballId + " in the frame " + frame, balls.x[i], decoder.getX(ballId), 0.5f / Protocol.QUANTUM);
+            assertEquals("y of the ball " + ballId + " in the frame " + frame, balls.y[i], decoder.getY(ballId), 0.5f / Protocol.QUANTUM);
+        }
+    }
+}